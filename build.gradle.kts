@@ -18,6 +18,7 @@ plugins {
     kotlin("jvm") version "1.9.22"
     id("ua.eshepelyuk.ManifestClasspath") version "1.0.0"
     id("com.github.johnrengelman.shadow") version "7.1.2"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 val versionName = "4Beta"
@@ -193,6 +194,37 @@ tasks.register<JavaExec>("runSim") {
     }
 }
 
+// Run a saved workspace headless as fast as possible, optionally recording producer values to a CSV file.
+// gradle runBatch -Pworkspace="sim.zip" -Piterations=10000
+// gradle runBatch -Pworkspace="sim.zip" -Piterations=10000 -PbatchArgs="--out out.csv --record Neuron_1:getActivation"
+tasks.register<JavaExec>("runBatch") {
+    jvmArgs(simbrainJvmArgs)
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("org.simbrain.workspace.BatchRunnerKt")
+    if (project.hasProperty("workspace") && project.hasProperty("iterations")) {
+        args(project.property("workspace") as String, project.property("iterations") as String)
+        if (project.hasProperty("batchArgs")) {
+            args((project.property("batchArgs") as String).split(" ").filter { it.isNotBlank() })
+        }
+    }
+}
+
+// JMH benchmarks in src/jmh. Runs all benchmarks, or those matching a pattern, and reports allocation with the gc
+// profiler.
+// gradle jmh
+// gradle jmh -PjmhIncludes="BackpropBenchmark"
+jmh {
+    jmhVersion.set("1.37")
+    jvmArgsAppend.set(simbrainJvmArgs)
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    profilers.add("gc")
+    if (project.hasProperty("jmhIncludes")) {
+        includes.add(project.property("jmhIncludes") as String)
+    }
+}
+
 tasks.withType<KotlinCompile>().configureEach {
     kotlinOptions {
         jvmTarget = "17"
@@ -0,0 +1,175 @@
+package org.simbrain.network.trainers
+
+import kotlinx.coroutines.runBlocking
+import org.openjdk.jmh.annotations.*
+import org.simbrain.network.core.Network
+import org.simbrain.network.subnetworks.*
+import smile.math.matrix.Matrix
+import java.util.concurrent.TimeUnit
+
+/*
+ * Benchmarks of the built-in trainers at several network sizes. Each benchmark is one training iteration: an epoch for
+ * supervised networks and one pass over the input data for unsupervised ones. Run with "gradle jmh"; see
+ * build.gradle.kts.
+ */
+
+/**
+ * Rows in the generated training data.
+ */
+private const val ROWS = 256
+
+private fun randomDataset(inputs: Int, outputs: Int) = MatrixDataset(
+    Matrix.rand(ROWS, inputs),
+    Matrix(ROWS, outputs).apply {
+        for (i in 0 until ROWS) {
+            this[i, i % outputs] = 1.0
+        }
+    }
+)
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class BackpropBenchmark {
+
+    @Param("10", "100", "400")
+    var size = 0
+
+    @Param("1", "4")
+    var shards = 0
+
+    private val net = Network()
+
+    private lateinit var bp: BackpropNetwork
+
+    @Setup
+    fun setup() {
+        bp = BackpropNetwork(intArrayOf(size, size / 2, size), null)
+        bp.trainingSet = randomDataset(size, size)
+        bp.trainer.shards = shards
+        net.addNetworkModels(bp)
+    }
+
+    @Benchmark
+    fun epoch() = runBlocking {
+        with(net) { with(bp) { bp.trainer.trainOnce() } }
+    }
+
+    /**
+     * An epoch without firing the trainer's events, to compare with [epoch].
+     */
+    @Benchmark
+    fun epochWithoutEvents() = runBlocking {
+        with(net) { with(bp.trainer) { bp.trainBatch(0 until ROWS) } }
+    }
+}
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class SRNBenchmark {
+
+    @Param("10", "100", "400")
+    var size = 0
+
+    private val net = Network()
+
+    private lateinit var srn: SRNNetwork
+
+    @Setup
+    fun setup() {
+        srn = SRNNetwork(size, size / 2, size)
+        srn.trainingSet = randomDataset(size, size)
+        net.addNetworkModels(srn)
+    }
+
+    /**
+     * One pass through the training data as a sequence.
+     */
+    @Benchmark
+    fun sequence() = runBlocking {
+        with(net) { with(srn) { srn.trainer.trainOnce() } }
+    }
+}
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class HopfieldBenchmark {
+
+    @Param("10", "100", "400")
+    var size = 0
+
+    private val net = Network()
+
+    private lateinit var hopfield: Hopfield
+
+    @Setup
+    fun setup() {
+        hopfield = Hopfield(size)
+        net.addNetworkModels(hopfield)
+    }
+
+    @Benchmark
+    fun train() = runBlocking {
+        with(net) { hopfield.trainer.trainOnce(hopfield) }
+    }
+}
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class RestrictedBoltzmannMachineBenchmark {
+
+    @Param("10", "100", "400")
+    var size = 0
+
+    private val net = Network()
+
+    private lateinit var rbm: RestrictedBoltzmannMachine
+
+    @Setup
+    fun setup() {
+        rbm = RestrictedBoltzmannMachine(size, size / 2)
+        rbm.inputData = Matrix.rand(ROWS, size)
+        net.addNetworkModels(rbm)
+    }
+
+    @Benchmark
+    fun train() = runBlocking {
+        with(net) { rbm.trainer.trainOnce(rbm) }
+    }
+}
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class CompetitiveNetworkBenchmark {
+
+    @Param("10", "100", "400")
+    var size = 0
+
+    private val net = Network()
+
+    private lateinit var competitive: CompetitiveNetwork
+
+    @Setup
+    fun setup() {
+        competitive = CompetitiveNetwork(size, 10)
+        competitive.inputData = Matrix.rand(ROWS, size)
+        net.addNetworkModels(competitive)
+    }
+
+    /**
+     * One update of the network, with the inputs left as they are.
+     */
+    @Benchmark
+    fun update() {
+        net.update()
+    }
+
+    @Benchmark
+    fun train() = runBlocking {
+        with(net) { competitive.trainer.trainOnce(competitive) }
+    }
+}
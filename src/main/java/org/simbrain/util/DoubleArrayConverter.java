@@ -12,6 +12,7 @@ import java.util.Base64;
 
 /**
  * Save double arrays in a user readable format for shorter arrays and Base64 encodings for large arrays..
+ * In binary snapshots (see XStreamSnapshot.kt) arrays are written as raw doubles.
  */
 public class DoubleArrayConverter implements Converter {
 
@@ -33,20 +34,32 @@ public class DoubleArrayConverter implements Converter {
     @Override
     public void marshal(Object source, HierarchicalStreamWriter writer, MarshallingContext context) {
         double[] array = (double[]) source;
-        context.convertAnother(arrayToString(array));
+        if (writer.underlyingWriter() instanceof SnapshotWriter) {
+            ((SnapshotWriter) writer.underlyingWriter()).setValue(array);
+        } else {
+            context.convertAnother(arrayToString(array));
+        }
     }
 
     @Override
     public Object unmarshal(HierarchicalStreamReader reader, UnmarshallingContext context) {
+        if (reader.underlyingReader() instanceof SnapshotReader) {
+            return ((SnapshotReader) reader.underlyingReader()).getDoubles();
+        }
         String str = reader.getValue();
         return stringToArray(str);
     }
 
     /**
      * For arrays below compression threshold return a json-style array string [1,2,3,...].  Otherwise
-     * return a base64 encoding of the string.
+     * return a base64 encoding of the string. When saving a workspace archive, large arrays are instead stored as
+     * binary entries (see {@link BinaryArchiveEntries}) and a reference to the entry is returned.
      */
     public static String arrayToString(double[] array) {
+        BinaryArchiveEntries entries = BinaryArchiveEntries.current();
+        if (entries != null && array.length >= BinaryArchiveEntries.MIN_SIZE) {
+            return BinaryArchiveEntries.REFERENCE_PREFIX + entries.add(array);
+        }
         if (array.length < compressionThreshold) {
             return "[" + Utils.doubleArrayToString(array, precision) + "]";
         } else {
@@ -58,6 +71,13 @@ public class DoubleArrayConverter implements Converter {
      * Converts a string representation produced by {@link #arrayToString(double[])} back to a double array.
      */
     public static double[] stringToArray(String str) {
+        if (str.startsWith(BinaryArchiveEntries.REFERENCE_PREFIX)) {
+            BinaryArchiveEntries entries = BinaryArchiveEntries.current();
+            if (entries == null) {
+                throw new IllegalStateException("Binary entries can only be read when opening a workspace archive");
+            }
+            return entries.get(str.substring(BinaryArchiveEntries.REFERENCE_PREFIX.length()));
+        }
         if (str.startsWith("[")) {
             return Utils.parseVectorString(str.substring(1, str.length()-1));
         } else {
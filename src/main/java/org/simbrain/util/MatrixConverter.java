@@ -8,7 +8,7 @@ import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
 import smile.math.matrix.Matrix;
 
 /**
- * Save Smile Matrices as base 64 byte-streams from double arrays.
+ * Save Smile Matrices as base 64 byte-streams from double arrays, or as raw doubles in binary snapshots.
  */
 public class MatrixConverter implements Converter {
 
@@ -31,7 +31,11 @@ public class MatrixConverter implements Converter {
 
         writer.startNode("data");
         double[] flatArray = CollectionUtilsKt.flattenArray(matrix.toArray());
-        context.convertAnother(DoubleArrayConverter.arrayToString(flatArray));
+        if (writer.underlyingWriter() instanceof SnapshotWriter) {
+            ((SnapshotWriter) writer.underlyingWriter()).setValue(flatArray);
+        } else {
+            context.convertAnother(DoubleArrayConverter.arrayToString(flatArray));
+        }
         writer.endNode();
     }
 
@@ -47,7 +51,9 @@ public class MatrixConverter implements Converter {
         reader.moveUp();
 
         reader.moveDown();
-        double[] flatData = DoubleArrayConverter.stringToArray(reader.getValue());
+        double[] flatData = reader.underlyingReader() instanceof SnapshotReader
+                ? ((SnapshotReader) reader.underlyingReader()).getDoubles()
+                : DoubleArrayConverter.stringToArray(reader.getValue());
         reader.moveUp();
 
         return Matrix.of(CollectionUtilsKt.reshape(rows, cols, flatData));
@@ -67,6 +67,13 @@ public abstract class Attribute {
      */
     protected int priority = CouplingManagerKt.LOW_PRIORITY;
 
+    /**
+     * Optional method that produces or consumes the same values as {@link #method}, but as a column {@link
+     * smile.math.matrix.Matrix} rather than a double array. See {@link Producible#vectorMethod()} and {@link
+     * Consumable#vectorMethod()}.
+     */
+    protected Method vectorMethod;
+
     /**
      * Initializing constructor.
      *
@@ -171,6 +178,10 @@ public abstract class Attribute {
         return method;
     }
 
+    public Method getVectorMethod() {
+        return vectorMethod;
+    }
+
     public int getPriority() {
         return priority;
     }
@@ -255,6 +266,17 @@ public abstract class Attribute {
             return (B) this;
         }
 
+        /**
+         * Set the method used to pass values as a matrix in vector couplings.
+         *
+         * @param vectorMethod the matrix getter (for producers) or matrix setter (for consumers)
+         * @return the Builder instance (for use in chained initialization)
+         */
+        public B vectorMethod(Method vectorMethod) {
+            product().vectorMethod = vectorMethod;
+            return (B) this;
+        }
+
         /**
          * Builds a instance of specific Attribute of given states.
          * @return the final product
@@ -29,6 +29,17 @@ public @interface Consumable {
      */
     String customDescriptionMethod() default "";
 
+    /**
+     * (For attributes of type double[] only).
+     * <br>
+     * The name of a method that takes the consumed values as a single column {@link smile.math.matrix.Matrix}. It
+     * will be passed the producer's backing matrix, so it must copy or add the values in and not keep a reference to
+     * the matrix. See {@link Producible#vectorMethod()}.
+     *
+     * @return the name of the vector method.
+     */
+    String vectorMethod() default "";
+
     /**
      * Whether this method should be visible in the coupling panels and menus by default. User
      * visibility settings will override this value.
@@ -39,6 +39,19 @@ public @interface Producible {
      */
     String arrayDescriptionMethod() default "";
 
+    /**
+     * (For attributes of type double[] only).
+     * <br>
+     * The name of a method with no arguments that returns the produced values as a column {@link
+     * smile.math.matrix.Matrix}, ideally the object's own backing matrix, so that no copy is made. When both sides of
+     * a double[] coupling have a vector method, the coupling passes the matrix straight to the consumer's vector
+     * method instead of creating and copying arrays. Example: a neuron array's activation array producer can return
+     * its activation matrix.
+     *
+     * @return the name of the vector method.
+     */
+    String vectorMethod() default "";
+
     /**
      * Whether this method should be visible in the coupling panels and menus by default. User
      * visibility settings will override this value.
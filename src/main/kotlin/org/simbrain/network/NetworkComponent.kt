@@ -18,6 +18,7 @@
 package org.simbrain.network
 
 import org.simbrain.network.core.Network
+import org.simbrain.network.core.NetworkModel
 import org.simbrain.network.core.getNetworkXStream
 import org.simbrain.network.neurongroups.NeuronGroup
 import org.simbrain.util.getSimbrainXStream
@@ -56,24 +57,30 @@ class NetworkComponent : WorkspaceComponent {
         init()
     }
 
+    private fun handleModelAdded(m: NetworkModel) {
+        setChangedSinceLastSave(true)
+        if (m is AttributeContainer) {
+            fireAttributeContainerAdded(m)
+        }
+        if (m is NeuronGroup) {
+            m.neuronList.map { addedContainer ->
+                this.fireAttributeContainerAdded(
+                    addedContainer
+                )
+            }
+        }
+    }
+
     /**
      * Initialize attribute types and listeners.
      */
     private fun init() {
         val event = network.events
 
-        event.modelAdded.on { m ->
-            setChangedSinceLastSave(true)
-            if (m is AttributeContainer) {
-                fireAttributeContainerAdded(m)
-            }
-            if (m is NeuronGroup) {
-                m.neuronList.map { addedContainer ->
-                    this.fireAttributeContainerAdded(
-                        addedContainer
-                    )
-                }
-            }
+        event.modelAdded.on { m -> handleModelAdded(m) }
+
+        event.modelsAdded.on { models ->
+            models.forEach { handleModelAdded(it) }
         }
 
         event.modelRemoved.on { m ->
@@ -15,7 +15,6 @@ package org.simbrain.network.connections
 import org.simbrain.network.core.Neuron
 import org.simbrain.network.core.Synapse
 import org.simbrain.util.UserParameter
-import org.simbrain.util.cartesianProduct
 import kotlin.random.Random
 
 /**
@@ -66,17 +65,15 @@ class AllToAll @JvmOverloads constructor(
 }
 
 /**
- * Connects every source neuron to every target neuron.
+ * Connects every source neuron to every target neuron. Pairs are generated in parallel (see [generateConnections]) and
+ * the synapses are then created in one pass.
  */
 fun createAllToAllSynapses(
     sourceNeurons: List<Neuron>,
     targetNeurons: List<Neuron>,
     allowSelfConnection: Boolean = false
 ): List<Synapse> {
-    return (sourceNeurons cartesianProduct targetNeurons)
-        .filter { (src, tar) ->
-            allowSelfConnection || src !== tar
-        }.map { (src, tar) ->
-            Synapse(src, tar).apply { strength = 1.0 }
-        }
+    return generateConnections(sourceNeurons.size, targetNeurons.size, seed = 0) { i, j, _ ->
+        if (allowSelfConnection || sourceNeurons[i] !== targetNeurons[j]) 1.0 else null
+    }.toSynapses(sourceNeurons, targetNeurons)
 }
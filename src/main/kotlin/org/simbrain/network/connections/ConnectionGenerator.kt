@@ -0,0 +1,122 @@
+package org.simbrain.network.connections
+
+import org.simbrain.network.core.Neuron
+import org.simbrain.network.core.Synapse
+import java.util.SplittableRandom
+import java.util.stream.IntStream
+import kotlin.random.Random
+
+/**
+ * Number of source neurons handled by each task in [generateConnections].
+ */
+const val DEFAULT_CONNECTION_PARTITION_SIZE = 64
+
+/**
+ * Connections between a list of source neurons and a list of target neurons, stored as parallel arrays of source
+ * indices, target indices and strengths. Produced by [generateConnections] and turned into [Synapse]s with
+ * [toSynapses].
+ */
+class ConnectionTriples(val sourceIndices: IntArray, val targetIndices: IntArray, val strengths: DoubleArray) {
+
+    val size get() = strengths.size
+
+    /**
+     * Create a synapse for each connection, in order. Creating a synapse updates the fan-in and fan-out of its
+     * neurons, so this is done in one pass on the calling thread.
+     */
+    fun toSynapses(source: List<Neuron>, target: List<Neuron>): List<Synapse> {
+        val synapses = ArrayList<Synapse>(size)
+        for (k in 0 until size) {
+            synapses.add(Synapse(source[sourceIndices[k]], target[targetIndices[k]], strengths[k]))
+        }
+        return synapses
+    }
+}
+
+/**
+ * Generate connections from each of [sourceCount] sources to each of [targetCount] targets in parallel.
+ *
+ * [strength] is called for each (source index, target index) pair and returns the strength of the connection to make,
+ * or null if the pair should not be connected. The sources are divided into partitions of [partitionSize], each of
+ * which is handled by one task with its own random stream split off from [seed]. The partitions and their streams do
+ * not depend on the number of threads, so the result is the same for a given seed however the work is scheduled.
+ *
+ * If [candidates] is given, only the target indices it returns for a source are checked, rather than every target.
+ * This is how distance-based strategies skip far away targets (see [org.simbrain.network.util.SpatialGridIndex]).
+ *
+ * [strength] and [candidates] are called from several threads at once, so they should only read shared state.
+ */
+@JvmOverloads
+fun generateConnections(
+    sourceCount: Int,
+    targetCount: Int,
+    seed: Long,
+    partitionSize: Int = DEFAULT_CONNECTION_PARTITION_SIZE,
+    candidates: ((i: Int) -> IntArray)? = null,
+    strength: (i: Int, j: Int, random: Random) -> Double?
+): ConnectionTriples {
+    val partitionCount = (sourceCount + partitionSize - 1) / partitionSize
+    val root = SplittableRandom(seed)
+    val streams = List(partitionCount) { root.split() }
+    val partitions = IntStream.range(0, partitionCount).parallel().mapToObj { p ->
+        val random = SplitRandom(streams[p])
+        val builder = TripleBuilder()
+        for (i in p * partitionSize until minOf((p + 1) * partitionSize, sourceCount)) {
+            if (candidates == null) {
+                for (j in 0 until targetCount) {
+                    strength(i, j, random)?.let { builder.add(i, j, it) }
+                }
+            } else {
+                for (j in candidates(i)) {
+                    strength(i, j, random)?.let { builder.add(i, j, it) }
+                }
+            }
+        }
+        builder
+    }.toList()
+
+    val total = partitions.sumOf { it.size }
+    val sourceIndices = IntArray(total)
+    val targetIndices = IntArray(total)
+    val strengths = DoubleArray(total)
+    var offset = 0
+    partitions.forEach {
+        it.sourceIndices.copyInto(sourceIndices, offset, 0, it.size)
+        it.targetIndices.copyInto(targetIndices, offset, 0, it.size)
+        it.strengths.copyInto(strengths, offset, 0, it.size)
+        offset += it.size
+    }
+    return ConnectionTriples(sourceIndices, targetIndices, strengths)
+}
+
+/**
+ * Growable primitive arrays for the connections found by one partition.
+ */
+private class TripleBuilder {
+    var sourceIndices = IntArray(16)
+    var targetIndices = IntArray(16)
+    var strengths = DoubleArray(16)
+    var size = 0
+
+    fun add(i: Int, j: Int, strength: Double) {
+        if (size == strengths.size) {
+            sourceIndices = sourceIndices.copyOf(size * 2)
+            targetIndices = targetIndices.copyOf(size * 2)
+            strengths = strengths.copyOf(size * 2)
+        }
+        sourceIndices[size] = i
+        targetIndices[size] = j
+        strengths[size] = strength
+        size++
+    }
+}
+
+/**
+ * Adapts a [SplittableRandom] stream to [Random], so that it can be passed to the usual connection functions.
+ */
+private class SplitRandom(private val stream: SplittableRandom) : Random() {
+    override fun nextBits(bitCount: Int): Int = stream.nextInt().ushr(32 - bitCount) and (-bitCount).shr(31)
+    override fun nextInt(): Int = stream.nextInt()
+    override fun nextLong(): Long = stream.nextLong()
+    override fun nextDouble(): Double = stream.nextDouble()
+}
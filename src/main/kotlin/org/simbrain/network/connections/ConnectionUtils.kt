@@ -18,6 +18,7 @@
 */
 package org.simbrain.network.connections
 
+import org.simbrain.network.core.SparseWeightMatrix
 import org.simbrain.network.core.Synapse
 import org.simbrain.util.SimbrainConstants.Polarity
 import kotlin.random.Random
@@ -84,3 +85,22 @@ fun polarizeSynapses(synapses: Collection<Synapse>, percentExcitatory: Double, r
     toInhibit.forEach { it.strength = DEFAULT_INHIBITORY_STRENGTH }
 
 }
+
+/**
+ * Sparse counterpart of [polarizeSynapses]. Layers have no polarity, so a random [percentExcitatory] of the stored
+ * entries are set to [DEFAULT_EXCITATORY_STRENGTH] and the rest to [DEFAULT_INHIBITORY_STRENGTH].
+ */
+@JvmOverloads
+fun polarizeSparseWeights(matrix: SparseWeightMatrix, percentExcitatory: Double, random: Random = Random) {
+    val excitatoryRatio = percentExcitatory / 100
+    if (excitatoryRatio > 1 || excitatoryRatio < 0) {
+        throw IllegalArgumentException("Randomization had failed." + " The ratio of excitatory synapses " + " cannot be greater than 1 or less than 0.")
+    }
+    val excitatoryCount = (matrix.nonZeroCount * excitatoryRatio).toInt()
+    val excitatory = BooleanArray(matrix.nonZeroCount) { it < excitatoryCount }.also { it.shuffle(random) }
+    var k = 0
+    matrix.updateEntries { _, _, _ ->
+        if (excitatory[k++]) DEFAULT_EXCITATORY_STRENGTH else DEFAULT_INHIBITORY_STRENGTH
+    }
+    matrix.events.updated.fire()
+}
@@ -17,11 +17,16 @@
  */
 package org.simbrain.network.connections
 
+import org.simbrain.network.core.Layer
 import org.simbrain.network.core.Neuron
+import org.simbrain.network.core.SparseWeightMatrix
 import org.simbrain.network.core.Synapse
+import org.simbrain.network.util.SpatialGridIndex
 import org.simbrain.util.SimbrainConstants.Polarity
 import org.simbrain.util.UserParameter
 import org.simbrain.util.propertyeditor.EditableObject
+import kotlin.math.ceil
+import kotlin.math.sqrt
 import kotlin.random.Random
 
 const val DEFAULT_DIST_CONST: Double = 0.25
@@ -36,6 +41,12 @@ const val DEFAULT_II_CONST: Double = 0.1
 
 val DEFAULT_LAMBDA: Double = 200.0
 
+/**
+ * Default cutoff for radial connections, in multiples of lambda. At 4 lambdas the connection probability has dropped
+ * by a factor of about 10^7.
+ */
+const val DEFAULT_CUTOFF: Double = 4.0
+
 /**
  * This connection type makes four types of distance-based connection probabilistically.
  *
@@ -126,6 +137,19 @@ class RadialGaussian(
         order = 1)
     var lambda: Double = DEFAULT_LAMBDA,
 
+    /**
+     * Only targets closer than this many lambdas are considered. Connection probability falls off as
+     * exp(-(distance / lambda)^2), so past a few lambdas it is negligible.
+     */
+    @UserParameter(
+        label = "Cutoff (lambdas)",
+        description = "Only neurons closer than this many lambdas are considered for connection",
+        minimumValue = 0.1,
+        increment = .5,
+        order = 7
+    )
+    var cutoff: Double = DEFAULT_CUTOFF,
+
     seed: Long = Random.nextLong()
 
 ) : ConnectionStrategy(seed), EditableObject {
@@ -137,17 +161,28 @@ class RadialGaussian(
         source: List<Neuron>,
         target: List<Neuron>
     ): List<Synapse> {
-        val syns: List<Synapse> = createRadialPolarizedSynapses(source, target, eeDistConst, eiDistConst, ieDistConst, iiDistConst, distConst, lambda, random)
+        val syns: List<Synapse> = createRadialPolarizedSynapses(source, target, eeDistConst, eiDistConst, ieDistConst, iiDistConst, distConst, lambda, random, cutoff)
         polarizeSynapses(syns, percentExcitatory, random)
         return syns
     }
 
+    /**
+     * Connect two layers with a [SparseWeightMatrix], treating the elements of each layer as points on a grid (see
+     * [createRadialSparseWeightMatrix]). Layers have no polarity, so [distConst] is used for every pair.
+     */
+    @JvmOverloads
+    fun connectLayers(source: Layer, target: Layer, spacing: Double = DEFAULT_ELEMENT_SPACING): SparseWeightMatrix {
+        return createRadialSparseWeightMatrix(source, target, distConst, lambda, spacing, random, cutoff).also {
+            polarizeSparseWeights(it, percentExcitatory, random)
+        }
+    }
+
     public override fun toString(): String {
         return "Radial (Gaussian)"
     }
 
     override fun copy(): RadialGaussian {
-        return RadialGaussian(eeDistConst, eiDistConst, ieDistConst, iiDistConst, distConst, lambda).also {
+        return RadialGaussian(eeDistConst, eiDistConst, ieDistConst, iiDistConst, distConst, lambda, cutoff).also {
             commonCopy(it)
         }
     }
@@ -250,6 +285,12 @@ class RadialGaussian(
 
 }
 
+/**
+ * Create synapses between two lists of neurons with a probability that falls off with distance, scaled by a constant
+ * that depends on the polarities of the source and target. Pairs are checked in parallel (see [generateConnections]),
+ * so the result only depends on the state of [random] and not on the number of threads. Only targets closer than
+ * [cutoff] lambdas are checked.
+ */
 fun createRadialPolarizedSynapses(
     source: List<Neuron>,
     target: List<Neuron>,
@@ -259,75 +300,126 @@ fun createRadialPolarizedSynapses(
     iiDistConst: Double = DEFAULT_II_CONST,
     distConst: Double = DEFAULT_DIST_CONST,
     lambda: Double = DEFAULT_LAMBDA,
-    random: Random = Random
+    random: Random = Random,
+    cutoff: Double = DEFAULT_CUTOFF
 ): List<Synapse> {
-    // Pre-allocating assuming that if one is using this as a connector
-    // then they are probably not going to have greater than 25%
-    // connectivity
-    val synapses: MutableList<Synapse> = ArrayList(source!!.size * target!!.size / 4)
-    for (src: Neuron in source) {
-        for (tar: Neuron in target) {
-            val randVal = random.nextDouble()
-            var probability: Double
-            if (src.polarity === Polarity.EXCITATORY) {
-                if (tar.polarity === Polarity.EXCITATORY) {
-                    probability = calcConnectProb(src, tar, eeDistConst, lambda)
-                } else if (tar.polarity === Polarity.INHIBITORY) {
-                    probability = calcConnectProb(src, tar, eiDistConst, lambda)
-                } else {
-                    probability = calcConnectProb(src, tar, distConst, lambda)
-                }
-            } else if (src.polarity === Polarity.INHIBITORY) {
-                if (tar.polarity === Polarity.EXCITATORY) {
-                    probability = calcConnectProb(src, tar, ieDistConst, lambda)
-                } else if (tar.polarity === Polarity.INHIBITORY) {
-                    probability = calcConnectProb(src, tar, iiDistConst, lambda)
-                } else {
-                    probability = calcConnectProb(src, tar, distConst, lambda)
-                }
-            } else {
-                probability = calcConnectProb(src, tar, distConst, lambda)
-            }
-            if (randVal < probability) {
-                val s = Synapse(src, tar)
-                if (src.polarity === Polarity.INHIBITORY) {
-                    s.forceSetStrength(-1.0)
-                } else {
-                    s.forceSetStrength(1.0)
-                }
-                synapses.add(s)
-            }
+    fun connectionConstant(src: Neuron, tar: Neuron) = when (src.polarity) {
+        Polarity.EXCITATORY -> when (tar.polarity) {
+            Polarity.EXCITATORY -> eeDistConst
+            Polarity.INHIBITORY -> eiDistConst
+            else -> distConst
+        }
+        Polarity.INHIBITORY -> when (tar.polarity) {
+            Polarity.EXCITATORY -> ieDistConst
+            Polarity.INHIBITORY -> iiDistConst
+            else -> distConst
         }
+        else -> distConst
     }
-    return synapses
+    return generateConnections(
+        source.size, target.size, random.nextLong(),
+        candidates = nearbyTargets(source, target, cutoff * lambda)
+    ) { i, j, pairRandom ->
+        val src = source[i]
+        val tar = target[j]
+        val probability = calcConnectProb(src, tar, connectionConstant(src, tar), lambda)
+        if (pairRandom.nextDouble() < probability) {
+            if (src.polarity === Polarity.INHIBITORY) -1.0 else 1.0
+        } else {
+            null
+        }
+    }.toSynapses(source, target)
 }
 
 /**
+ * Create synapses between two lists of neurons with a probability that falls off with distance. Pairs are checked in
+ * parallel (see [generateConnections]), and only targets closer than [cutoff] lambdas are checked.
+ *
  * @param distConst the connection constant for general connections. Used in cases where neurons have no explicit
  * polarity.
  * @param lambda average connection distance.
+ * @param cutoff only targets closer than this many lambdas are considered.
  */
+@JvmOverloads
 fun createRadialNoPolaritySynapses(
     source: List<Neuron>,
     target: List<Neuron>,
     distConst: Double,
-    lambda: Double
+    lambda: Double,
+    random: Random = Random,
+    cutoff: Double = DEFAULT_CUTOFF
 ): List<Synapse> {
-    // Pre-allocating assuming that if one is using this as a connector
-    // then they are probably not going to have greater than 25%
-    // connectivity
-    val synapses: MutableList<Synapse> = ArrayList(source.size * target.size / 4)
-    for (src: Neuron in source) {
-        for (tar: Neuron in target) {
-            val randVal: Double = Math.random()
-            val probability: Double = calcConnectProb(src, tar, distConst, lambda)
-            if (randVal < probability) {
-                val s = Synapse(src, tar)
-                synapses.add(s)
-            }
+    return generateConnections(
+        source.size, target.size, random.nextLong(),
+        candidates = nearbyTargets(source, target, cutoff * lambda)
+    ) { i, j, pairRandom ->
+        if (pairRandom.nextDouble() < calcConnectProb(source[i], target[j], distConst, lambda)) 1.0 else null
+    }.toSynapses(source, target)
+}
+
+/**
+ * For each source, the indices of the targets closer than [radius], found with a [SpatialGridIndex].
+ */
+private fun nearbyTargets(source: List<Neuron>, target: List<Neuron>, radius: Double): (Int) -> IntArray {
+    val index = SpatialGridIndex(target, radius)
+    return { i -> index.neighbors(source[i].x, source[i].y, radius) }
+}
+
+/**
+ * Create a [SparseWeightMatrix] between two layers whose connection probabilities fall off with distance, as in
+ * [createRadialNoPolaritySynapses]. The elements of each layer are laid out row by row on a square grid with the given
+ * spacing, starting at the layer's location. Only the pairs that end up connected are stored.
+ *
+ * @param distConst the connection constant.
+ * @param lambda average connection distance.
+ * @param spacing distance between adjacent layer elements.
+ * @param cutoff only pairs closer than this many lambdas are considered.
+ */
+@JvmOverloads
+fun createRadialSparseWeightMatrix(
+    source: Layer,
+    target: Layer,
+    distConst: Double,
+    lambda: Double,
+    spacing: Double = DEFAULT_ELEMENT_SPACING,
+    random: Random = Random,
+    cutoff: Double = DEFAULT_CUTOFF
+): SparseWeightMatrix {
+    val (sourceXs, sourceYs) = gridPositions(source, spacing)
+    val (targetXs, targetYs) = gridPositions(target, spacing)
+    val radius = cutoff * lambda
+    val sourceIndex = SpatialGridIndex(sourceXs, sourceYs, radius)
+    // Rows of the matrix are targets, so targets play the role of sources when generating connections
+    val entries = generateConnections(
+        target.size, source.size, random.nextLong(),
+        candidates = { i -> sourceIndex.neighbors(targetXs[i], targetYs[i], radius) }
+    ) { i, j, pairRandom ->
+        val dx = targetXs[i] - sourceXs[j]
+        val dy = targetYs[i] - sourceYs[j]
+        if (pairRandom.nextDouble() < calcConnectProb(dx * dx + dy * dy, distConst, lambda)) {
+            DEFAULT_EXCITATORY_STRENGTH
+        } else {
+            null
         }
     }
-    return synapses
+    return SparseWeightMatrix(source, target).apply {
+        setEntries(entries.sourceIndices, entries.targetIndices, entries.strengths)
+    }
+}
+
+/**
+ * Default distance between adjacent layer elements, in pixels, used by [createRadialSparseWeightMatrix].
+ */
+const val DEFAULT_ELEMENT_SPACING = 10.0
+
+/**
+ * The x and y positions of the elements of a layer laid out on a square grid.
+ */
+private fun gridPositions(layer: Layer, spacing: Double): Pair<DoubleArray, DoubleArray> {
+    val columns = ceil(sqrt(layer.size.toDouble())).toInt().coerceAtLeast(1)
+    val xs = DoubleArray(layer.size) { layer.location.x + (it % columns) * spacing }
+    val ys = DoubleArray(layer.size) { layer.location.y + (it / columns) * spacing }
+    return xs to ys
 }
 
 /**
@@ -339,7 +431,14 @@ fun createRadialNoPolaritySynapses(
  * @return
  */
 private fun calcConnectProb(src: Neuron, tar: Neuron, distConst: Double, lambda: Double): Double {
-    val dist: Double = -getRawDist(src, tar)
+    return calcConnectProb(getRawDist(src, tar), distConst, lambda)
+}
+
+/**
+ * @param rawDist   the squared distance between source and target.
+ */
+private fun calcConnectProb(rawDist: Double, distConst: Double, lambda: Double): Double {
+    val dist: Double = -rawDist
     var exp: Double = Math.exp(dist / (lambda * lambda))
     if (exp == 1.0) { // Same location == same neuron: cheapest way to
         // prevent self connections
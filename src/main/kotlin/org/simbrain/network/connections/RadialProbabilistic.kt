@@ -20,6 +20,7 @@ package org.simbrain.network.connections
 import org.simbrain.network.core.Neuron
 import org.simbrain.network.core.Synapse
 import org.simbrain.network.util.SimnetUtils
+import org.simbrain.network.util.SpatialGridIndex
 import org.simbrain.util.UserParameter
 import org.simbrain.util.propertyeditor.EditableObject
 import org.simbrain.util.stats.ProbabilityDistribution
@@ -155,8 +156,12 @@ fun createProbabilisticallySynapses(
     weightRandomizer: ProbabilityDistribution = NormalDistribution(0.0, 1.0),
     random: Random = Random
 ): List<Synapse> {
+    if (radius <= 0) return listOf()
+    // Index the targets once rather than measuring the distance from every source to every target
+    val index = SpatialGridIndex(tar, radius)
     return src.flatMap { n ->
-        n.createProbabilisticallySynapses(tar, prob, radius, allowSelfConnection, weightRandomizer, random)
+        index.neighbors(n.x, n.y, radius).map { tar[it] }
+            .connectProbabilistically(n, prob, allowSelfConnection, weightRandomizer, random)
     }
 }
 
@@ -172,12 +177,22 @@ fun Neuron.createProbabilisticallySynapses(
     random: Random = Random
 ): List<Synapse> {
     return getNeuronsInRadius(pool, radius)
-        .filter { otherNeuron ->
-            if (!allowSelfConnection) this != otherNeuron else true
+        .connectProbabilistically(this, prob, allowSelfConnection, weightRandomizer, random)
+}
+
+private fun List<Neuron>.connectProbabilistically(
+    source: Neuron,
+    prob: Double,
+    allowSelfConnection: Boolean,
+    weightRandomizer: ProbabilityDistribution,
+    random: Random
+): List<Synapse> {
+    return filter { otherNeuron ->
+            if (!allowSelfConnection) source != otherNeuron else true
         }
         .filter { random.nextDouble() < prob }
         .map { otherNeuron ->
-            Synapse(this, otherNeuron, otherNeuron.polarity.value(weightRandomizer.sampleDouble()))
+            Synapse(source, otherNeuron, otherNeuron.polarity.value(weightRandomizer.sampleDouble()))
         }
 }
 
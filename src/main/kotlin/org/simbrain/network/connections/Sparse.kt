@@ -17,13 +17,17 @@
  */
 package org.simbrain.network.connections
 
+import org.simbrain.network.core.Layer
 import org.simbrain.network.core.Neuron
+import org.simbrain.network.core.SparseWeightMatrix
 import org.simbrain.network.core.Synapse
 import org.simbrain.util.UserParameter
 import org.simbrain.util.cartesianProduct
 import org.simbrain.util.propertyeditor.EditableObject
 import org.simbrain.util.sampleWithoutReplacement
+import kotlin.math.min
 import kotlin.math.roundToInt
+import kotlin.math.roundToLong
 import kotlin.random.Random
 
 /**
@@ -104,6 +108,14 @@ class Sparse @JvmOverloads constructor(
         }
     }
 
+    /**
+     * Connect two layers with a [SparseWeightMatrix] of the current [connectionDensity].
+     */
+    fun connectLayers(source: Layer, target: Layer): SparseWeightMatrix {
+        return createSparseWeightMatrix(source, target, connectionDensity, allowSelfConnection, equalizeEfferents, random)
+            .also { polarizeSparseWeights(it, percentExcitatory, random) }
+    }
+
     override val name = "Sparse"
 
     override fun toString() = name
@@ -150,7 +162,8 @@ fun createSparseSynapses(
     if (sourceNeurons.isEmpty() || targetNeurons.isEmpty()) {
         return ConnectionsResult.Add(listOf())
     }
-    val existingSynapses = sourceNeurons.flatMap { it.fanOut.values.filter{ it.target in targetNeurons } }
+    val targetSet = targetNeurons.toHashSet()
+    val existingSynapses = sourceNeurons.flatMap { it.fanOut.values.filter { it.target in targetSet } }
     val possibleConnections = (sourceNeurons.asSequence() cartesianProduct targetNeurons.asSequence()).toSet().let {
         if (!selfConnectionAllowed) {
             it.filter { (source, target) -> source != target }
@@ -191,6 +204,67 @@ fun createSparseSynapses(
     createSparseSynapses(sourceNeurons, targetNeurons, sparsity, selfConnectionAllowed, random)
 }
 
+/**
+ * Create a [SparseWeightMatrix] between two layers with the given density. Unlike [createSparseSynapses], the
+ * possible connections are never enumerated, so this scales to large layers. Self connections are only excluded when
+ * the source and target are the same layer.
+ */
+@JvmOverloads
+fun createSparseWeightMatrix(
+    source: Layer,
+    target: Layer,
+    density: Double = .01,
+    selfConnectionAllowed: Boolean = false,
+    equalizeEfferents: Boolean = false,
+    random: Random = Random
+): SparseWeightMatrix {
+    val excludeSelf = !selfConnectionAllowed && source === target
+    val rows = ArrayList<Int>()
+    val cols = ArrayList<Int>()
+    if (equalizeEfferents) {
+        val count = (target.size * density).toInt()
+        for (j in 0 until source.size) {
+            // Target indices, skipping j when self connections are excluded
+            val skipSelf = excludeSelf && j < target.size
+            val candidates = if (skipSelf) target.size - 1 else target.size
+            sampleIndices(candidates.toLong(), min(count, candidates).toLong(), random).forEach { index ->
+                val i = index.toInt()
+                rows.add(if (skipSelf && i >= j) i + 1 else i)
+                cols.add(j)
+            }
+        }
+    } else {
+        // Index pairs (i, j) as i * columns + j, skipping the diagonal when self connections are excluded
+        val columns = if (excludeSelf) source.size - 1 else source.size
+        val possible = target.size.toLong() * columns
+        val count = (density * possible).roundToLong().coerceIn(0, possible)
+        sampleIndices(possible, count, random).forEach { index ->
+            val i = (index / columns).toInt()
+            val c = (index % columns).toInt()
+            rows.add(i)
+            cols.add(if (excludeSelf && c >= i) c + 1 else c)
+        }
+    }
+    return SparseWeightMatrix(source, target).apply {
+        setEntries(rows.toIntArray(), cols.toIntArray(), DoubleArray(rows.size) { DEFAULT_EXCITATORY_STRENGTH })
+    }
+}
+
+/**
+ * Sample [count] distinct indices from 0 until [n] using Floyd's algorithm, which only uses memory proportional to
+ * [count].
+ */
+private fun sampleIndices(n: Long, count: Long, random: Random): Set<Long> {
+    val result = LinkedHashSet<Long>()
+    for (j in n - count until n) {
+        val t = random.nextLong(j + 1)
+        if (!result.add(t)) {
+            result.add(j)
+        }
+    }
+    return result
+}
+
 sealed interface ConnectionsResult {
     data class Add(val connectionsToAdd: List<Synapse>) : ConnectionsResult
     data class Remove(val connectionsToRemove: List<Synapse>): ConnectionsResult
@@ -215,6 +215,7 @@ abstract class AbstractNeuronCollection : Layer(), CopyableObject {
     protected open fun addNeuron(neuron: Neuron) {
         neuronList.add(neuron)
         addListener(neuron)
+        events.neuronAdded.fire(neuron)
     }
 
     /**
@@ -230,7 +231,9 @@ abstract class AbstractNeuronCollection : Layer(), CopyableObject {
     protected fun addListener(n: Neuron) {
         n.events.locationChanged.on { events.locationChanged.fire() }
         n.events.deleted.on(wait = true) { neuron ->
-            neuronList.remove(neuron)
+            if (neuronList.remove(neuron)) {
+                events.neuronRemoved.fire(neuron)
+            }
             if (isEmpty) {
                 delete()
             }
@@ -238,11 +241,15 @@ abstract class AbstractNeuronCollection : Layer(), CopyableObject {
     }
 
     fun removeNeuron(neuron: Neuron?) {
-        neuronList.remove(neuron)
+        if (neuron != null && neuronList.remove(neuron)) {
+            events.neuronRemoved.fire(neuron)
+        }
     }
 
     fun removeAllNeurons() {
+        val removed = neuronList.toList()
         neuronList.clear()
+        removed.forEach { events.neuronRemoved.fire(it) }
     }
 
     /**
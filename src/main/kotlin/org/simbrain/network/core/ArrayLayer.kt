@@ -31,11 +31,9 @@ abstract class ArrayLayer(
     context(Network)
     override fun accumulateInputs() {
         super.accumulateInputs()
-        val wtdInputs = Matrix(size, 1)
         for (c in incomingConnectors) {
-            wtdInputs.addi(c.getSummedPSRs())
+            inputs.addi(c.getSummedPSRs())
         }
-        addInputs(wtdInputs)
         addInputs(biases)
     }
 
@@ -44,7 +42,7 @@ abstract class ArrayLayer(
         this.inputs.add(inputs)
     }
 
-    @Consumable
+    @Consumable(vectorMethod = "addInputs")
     fun addInputs(inputs: DoubleArray?) {
         addInputs(Matrix.column(inputs))
     }
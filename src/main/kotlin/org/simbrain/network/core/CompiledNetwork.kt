@@ -0,0 +1,228 @@
+package org.simbrain.network.core
+
+import kotlinx.coroutines.Dispatchers
+import org.simbrain.network.learningrules.StaticSynapseRule
+import org.simbrain.network.spikeresponders.NonResponder
+
+/**
+ * A "compiled" form of the free neurons and synapses of a [Network], used by [Network.compiledUpdate].
+ *
+ * Activations and weighted inputs of the free neurons are packed into flat arrays, and connectionist synapses between
+ * free neurons are packed into a compressed sparse row (CSR) matrix with one row per target neuron. Weighted inputs are
+ * then computed in a tight loop over primitive arrays rather than by visiting each [Synapse] object.
+ *
+ * Synapses that cannot be compiled are updated the usual way. These are synapses that are disabled, delayed, spiking
+ * (have a spike responder), plastic (have a learning rule), come from neurons that are not free, or feed a neuron whose
+ * rule reads post-synaptic responses directly (see [org.simbrain.network.updaterules.NeuronUpdateRule.readsPostSynapticResponses]).
+ *
+ * Neuron update rules operate on [Neuron] objects, so activations are read from the neurons at the start of each update
+ * and update rules write them back as usual. The [Synapse.psr] of compiled synapses is not needed during an update,
+ * so it is only written back by [syncToModels], which reading [Synapse.psr] triggers.
+ *
+ * The compiled form is rebuilt lazily when models are added or removed, when learning rules or update rules change, or
+ * when [invalidate] is called (e.g. after changing a spike responder or delay in a script). Strength changes are picked
+ * up through [Synapse.events], whose handlers here run on the firing thread, so they take effect on the next update.
+ */
+class CompiledNetwork(private val network: Network) {
+
+    @Volatile
+    private var needsCompile = true
+
+    @Volatile
+    private var weightsDirty = false
+
+    /**
+     * True when the psrs of compiled synapses have not been written back since the last update.
+     */
+    @Volatile
+    private var psrsStale = false
+
+    /**
+     * The free neurons. The index of a neuron in this array is its row in the arrays below.
+     */
+    private var neurons: Array<Neuron> = emptyArray()
+
+    /**
+     * Activations of the free neurons at the start of the current update.
+     */
+    private var activations = DoubleArray(0)
+
+    /**
+     * CSR row pointers. Compiled synapses onto neurons[i] are at indices rowStart[i] until rowStart[i + 1].
+     */
+    private var rowStart = IntArray(1)
+
+    /**
+     * Index of the source neuron of each compiled synapse.
+     */
+    private var sourceIndices = IntArray(0)
+
+    /**
+     * Strength of each compiled synapse.
+     */
+    private var weights = DoubleArray(0)
+
+    /**
+     * The compiled synapses, in CSR order. Used to refresh [weights] and write back psrs.
+     */
+    private var compiledSynapses: Array<Synapse> = emptyArray()
+
+    /**
+     * Row pointers for synapses onto free neurons that are updated the usual way.
+     */
+    private var objectRowStart = IntArray(1)
+
+    /**
+     * Synapses onto free neurons that could not be compiled, in row order.
+     */
+    private var objectSynapses: Array<Synapse> = emptyArray()
+
+    /**
+     * Free synapses that were not compiled and so must still be updated (e.g. to apply learning rules).
+     */
+    private var uncompiledFreeSynapses: List<Synapse> = listOf()
+
+    /**
+     * Functions that remove the event handlers added at compile time.
+     */
+    private val unregisterHandlers = ArrayList<() -> Boolean?>()
+
+    init {
+        // Handled on the firing thread, so that an update right after models are added or removed recompiles
+        network.events.modelAdded.on(Dispatchers.Unconfined) { invalidate() }
+        network.events.modelsAdded.on(Dispatchers.Unconfined) { invalidate() }
+        network.events.modelRemoved.on(Dispatchers.Unconfined) { invalidate() }
+    }
+
+    /**
+     * Mark the compiled form as out of date, so that it is rebuilt on the next update.
+     */
+    fun invalidate() {
+        needsCompile = true
+    }
+
+    /**
+     * Number of synapses currently handled by the compiled kernel.
+     */
+    val compiledSynapseCount get() = compiledSynapses.size
+
+    private fun isCompilable(synapse: Synapse, sourceIndex: Int?, target: Neuron) = sourceIndex != null
+            && synapse.isEnabled
+            && synapse.delay == 0
+            && synapse.spikeResponder is NonResponder
+            && synapse.learningRule is StaticSynapseRule
+            && !target.updateRule.readsPostSynapticResponses
+
+    private fun compile() {
+        syncToModels()
+        compiledSynapses.forEach { it.compiledBy = null }
+        needsCompile = false
+        unregisterHandlers.forEach { it() }
+        unregisterHandlers.clear()
+
+        neurons = network.freeNeurons.toTypedArray()
+        val index = HashMap<Neuron, Int>(neurons.size * 2)
+        neurons.forEachIndexed { i, neuron -> index[neuron] = i }
+
+        val compiled = ArrayList<Synapse>()
+        val sources = ArrayList<Int>()
+        val uncompiled = ArrayList<Synapse>()
+        rowStart = IntArray(neurons.size + 1)
+        objectRowStart = IntArray(neurons.size + 1)
+        neurons.forEachIndexed { i, target ->
+            target.fanIn.forEach { synapse ->
+                val sourceIndex = index[synapse.source]
+                if (isCompilable(synapse, sourceIndex, target)) {
+                    compiled.add(synapse)
+                    sources.add(sourceIndex!!)
+                    unregisterHandlers.add(synapse.events.strengthUpdated.on(Dispatchers.Unconfined) { weightsDirty = true })
+                } else {
+                    uncompiled.add(synapse)
+                }
+                unregisterHandlers.add(synapse.events.learningRuleUpdated.on(Dispatchers.Unconfined) { _, _ -> invalidate() })
+            }
+            rowStart[i + 1] = compiled.size
+            objectRowStart[i + 1] = uncompiled.size
+            unregisterHandlers.add(target.events.updateRuleChanged.on(Dispatchers.Unconfined) { _, _ -> invalidate() })
+        }
+
+        compiledSynapses = compiled.toTypedArray()
+        compiledSynapses.forEach { it.compiledBy = this }
+        sourceIndices = sources.toIntArray()
+        weights = DoubleArray(compiledSynapses.size) { compiledSynapses[it].strength }
+        weightsDirty = false
+        objectSynapses = uncompiled.toTypedArray()
+        activations = DoubleArray(neurons.size)
+
+        val compiledSet = compiled.toHashSet()
+        uncompiledFreeSynapses = network.freeSynapses.filter { it !in compiledSet }
+    }
+
+    private fun refreshWeights() {
+        weightsDirty = false
+        for (k in weights.indices) {
+            weights[k] = compiledSynapses[k].strength
+        }
+    }
+
+    /**
+     * First phase of a buffered update for the free neurons: sum weighted inputs and biases into each neuron's input.
+     */
+    context(Network)
+    fun accumulateInputs() {
+        if (needsCompile) {
+            compile()
+        }
+        if (weightsDirty) {
+            refreshWeights()
+        }
+        for (i in neurons.indices) {
+            activations[i] = neurons[i].activation
+        }
+        for (i in neurons.indices) {
+            var weightedInput = 0.0
+            for (k in rowStart[i] until rowStart[i + 1]) {
+                weightedInput += activations[sourceIndices[k]] * weights[k]
+            }
+            for (k in objectRowStart[i] until objectRowStart[i + 1]) {
+                val synapse = objectSynapses[k]
+                synapse.updatePSR()
+                weightedInput += synapse.psr
+            }
+            val neuron = neurons[i]
+            neuron.addInputValue(weightedInput)
+            neuron.addInputValue(neuron.bias)
+        }
+        psrsStale = true
+    }
+
+    /**
+     * Second phase of a buffered update for the free neurons.
+     */
+    context(Network)
+    fun updateNeurons() {
+        neurons.forEach { it.update() }
+    }
+
+    /**
+     * Second phase of a buffered update for free synapses that were not compiled, e.g. to apply learning rules.
+     */
+    context(Network)
+    fun updateSynapses() {
+        uncompiledFreeSynapses.forEach { it.update() }
+    }
+
+    /**
+     * Write the post-synaptic responses computed in the last update back to the compiled [Synapse] objects. Called
+     * when a compiled synapse's psr is read or set, and before the network is saved.
+     */
+    @Synchronized
+    fun syncToModels() {
+        if (!psrsStale) return
+        // Cleared first, since setting psr calls back into this method
+        psrsStale = false
+        for (k in compiledSynapses.indices) {
+            compiledSynapses[k].psr = activations[sourceIndices[k]] * weights[k]
+        }
+    }
+}
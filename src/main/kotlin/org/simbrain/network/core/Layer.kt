@@ -91,7 +91,7 @@ abstract class Layer : LocatableModel(), AttributeContainer {
 
     abstract val biasArray: DoubleArray
 
-    @get:Producible
+    @get:Producible(vectorMethod = "getActivations")
     val outputArray: DoubleArray
         get() = activations.toDoubleArray()
 
@@ -13,6 +13,7 @@ import org.simbrain.util.math.SimbrainMath
 import org.simbrain.util.propertyeditor.EditableObject
 import org.simbrain.workspace.updater.PerformanceMonitor
 import org.simbrain.workspace.updater.UpdateAction
+import java.util.Collections
 import java.util.concurrent.atomic.AtomicBoolean
 import kotlin.math.abs
 import kotlin.math.ceil
@@ -113,7 +114,7 @@ class Network: CoroutineScope, EditableObject {
      * Manage ids for all network elements.
      */
     @Transient
-    var idManager = SimpleIdManager({ cls -> networkModels.getRawModelSet(cls).size + 1 })
+    var idManager = SimpleIdManager({ cls -> networkModels.count(cls) + 1 })
         private set
 
     /**
@@ -123,12 +124,12 @@ class Network: CoroutineScope, EditableObject {
     var placementManager = PlacementManager()
 
     /**
-     * Returns a linked hash set of models of the specified type.
+     * Returns a read-only, ordered set of models of the specified type.
      */
     fun <T : NetworkModel> getModels(cls: Class<T>) = networkModels[cls]
 
     /**
-     * Returns a linked hash set of models of a type specified using a generic.
+     * Returns a read-only, ordered set of models of a type specified using a generic.
      */
     inline fun <reified T : NetworkModel> getModels() = getModels(T::class.java)
 
@@ -235,8 +236,82 @@ class Network: CoroutineScope, EditableObject {
      * Default asynchronous update method called by [org.simbrain.network.update_actions.BufferedUpdate].
      */
     suspend fun bufferedUpdate()  = coroutineScope {
-        networkModels.all.forEach { it.accumulateInputs() }
-        networkModels.all.forEach { it.update() }
+        networkModels.allInUpdatingOrder.forEach { it.accumulateInputs() }
+        networkModels.allInUpdatingOrder.forEach { it.update() }
+    }
+
+    /**
+     * Number of models handed to a single worker in [parallelBufferedUpdate]. Smaller chunks balance load better but
+     * have more scheduling overhead.
+     */
+    @UserParameter("Parallel chunk size", description = "Number of models updated by a single worker when " +
+            "parallel buffered update is used", minimumValue = 1.0, order = 30)
+    var parallelUpdateChunkSize = 1024
+
+    /**
+     * Multi-core version of [bufferedUpdate], called by [org.simbrain.network.update_actions.ParallelBufferedUpdate].
+     *
+     * Models are visited in the same order as [bufferedUpdate], one [NetworkModelList.updatingTiers] tier at a time.
+     * Within a tier models are split into chunks of [parallelUpdateChunkSize] which run concurrently on
+     * [Dispatchers.Default]. Every tier in the accumulate phase finishes before the next begins, and the whole
+     * accumulate phase finishes before the update phase begins, so the results are the same as the serial update.
+     *
+     * Neuron collections can share neurons, so their tier is always updated serially. Models that draw from the shared
+     * [random] (e.g. probabilistic spike responders) are not reproducible across runs in this mode.
+     */
+    suspend fun parallelBufferedUpdate() = coroutineScope {
+        val tiers = networkModels.updatingTiers
+        tiers.forEach { tier -> updateTierInParallel(tier) { it.accumulateInputs() } }
+        tiers.forEach { tier -> updateTierInParallel(tier) { it.update() } }
+    }
+
+    /**
+     * Apply [action] to every model in a tier, in chunks on [Dispatchers.Default], and wait for all chunks to finish.
+     */
+    private suspend fun updateTierInParallel(tier: List<NetworkModel>, action: (NetworkModel) -> Unit) {
+        if (tier.size <= parallelUpdateChunkSize || tier.first() is NeuronCollection) {
+            tier.forEach(action)
+            return
+        }
+        coroutineScope {
+            tier.chunked(parallelUpdateChunkSize).forEach { chunk ->
+                launch(Dispatchers.Default) { chunk.forEach(action) }
+            }
+        }
+    }
+
+    /**
+     * Packed form of the free neurons and synapses used by [compiledUpdate]. Created the first time a compiled update
+     * is run.
+     */
+    @Transient
+    var compiledNetwork: CompiledNetwork? = null
+        private set
+
+    /**
+     * Version of [bufferedUpdate] in which free neurons and synapses are updated using a [CompiledNetwork], which
+     * computes weighted inputs over flat arrays. Called by [org.simbrain.network.update_actions.CompiledUpdate].
+     * All other models are updated as in [bufferedUpdate].
+     *
+     * Compiled synapses are summed before uncompiled ones, so when both feed the same neuron results can differ from
+     * [bufferedUpdate] in the last few bits.
+     */
+    suspend fun compiledUpdate() = coroutineScope {
+        val compiled = compiledNetwork ?: CompiledNetwork(this@Network).also { compiledNetwork = it }
+        val tiers = networkModels.updatingTiers
+        compiled.accumulateInputs()
+        tiers.forEach { tier ->
+            if (tier.first() !is Neuron) {
+                tier.forEach { it.accumulateInputs() }
+            }
+        }
+        tiers.forEach { tier ->
+            when (tier.first()) {
+                is Neuron -> compiled.updateNeurons()
+                is Synapse -> compiled.updateSynapses()
+                else -> tier.forEach { it.update() }
+            }
+        }
     }
 
     /**
@@ -251,61 +326,126 @@ class Network: CoroutineScope, EditableObject {
     val freeSynapses get() = networkModels.get<Synapse>()
 
     /**
-     * Create "flat" list of neurons, which includes the top-level neurons plus all group neurons.
+     * Flat model lists, rebuilt only when models are added or removed or when group membership changes. See
+     * [invalidateFlatLists].
+     */
+    @Transient
+    private var flatNeuronListCache = CachedObject { readOnly(buildFlatNeuronList()) }
+
+    @Transient
+    private var flatSynapseListCache = CachedObject { readOnly(buildFlatSynapseList()) }
+
+    @Transient
+    private var flatNeuronGroupListCache = CachedObject { readOnly(buildFlatNeuronGroupList()) }
+
+    @Transient
+    private var flatSynapseGroupListCache = CachedObject { readOnly(buildFlatSynapseGroupList()) }
+
+    @Transient
+    private var flatWeightMatrixListCache = CachedObject { readOnly(buildFlatWeightMatrixList()) }
+
+    private fun <T> readOnly(list: List<T>): List<T> = Collections.unmodifiableList(list)
+
+    /**
+     * "Flat" list of neurons, which includes the top-level neurons plus all group neurons. A read-only view that is
+     * only rebuilt when the network changes, so it is cheap to call repeatedly.
      *
      * @return the flat list
      */
     val flatNeuronList: List<Neuron>
-        get() = sequence {
-            yieldAll(networkModels.get<Neuron>())
-            for (neuronGroup in networkModels.get<NeuronGroup>()) {
-                yieldAll(neuronGroup.neuronList)
-            }
-            for (subnetwork in networkModels.get<Subnetwork>()) {
-                yieldAll(subnetwork.modelList.get<NeuronGroup>().flatMap { it.neuronList })
-            }
-        }.toList()
+        get() = flatNeuronListCache.value
+
+    private fun buildFlatNeuronList() = sequence {
+        yieldAll(networkModels.get<Neuron>())
+        for (neuronGroup in networkModels.get<NeuronGroup>()) {
+            yieldAll(neuronGroup.neuronList)
+        }
+        for (subnetwork in networkModels.get<Subnetwork>()) {
+            yieldAll(subnetwork.modelList.get<NeuronGroup>().flatMap { it.neuronList })
+        }
+    }.toList()
 
     /**
-     * Create "flat" list of synapses, which includes the top-level synapses plus all subnet synapses.
+     * "Flat" list of synapses, which includes the top-level synapses plus all subnet synapses. A read-only view that is
+     * only rebuilt when the network changes.
      *
      * @return the flat list
      */
     val flatSynapseList: List<Synapse>
-        get() = sequence {
-            yieldAll(networkModels.get<Synapse>())
-            yieldAll(networkModels.get<SynapseGroup>().flatMap { sg -> sg.synapses })
-            yieldAll(networkModels.get<Subnetwork>().flatMap { subnetwork ->
-                subnetwork.modelList.get<SynapseGroup>().flatMap { it.synapses }
-            })
-        }.toList()
+        get() = flatSynapseListCache.value
+
+    private fun buildFlatSynapseList() = sequence {
+        yieldAll(networkModels.get<Synapse>())
+        yieldAll(networkModels.get<SynapseGroup>().flatMap { sg -> sg.synapses })
+        yieldAll(networkModels.get<Subnetwork>().flatMap { subnetwork ->
+            subnetwork.modelList.get<SynapseGroup>().flatMap { it.synapses }
+        })
+    }.toList()
 
     /**
-     * Returns a list of all neuron groups including those in subnetworks.
+     * Returns a read-only list of all neuron groups including those in subnetworks.
      */
     val flatNeuronGroupList: List<NeuronGroup>
-        get() = sequence {
-            yieldAll(networkModels.get<NeuronGroup>())
-            yieldAll(networkModels.get<Subnetwork>().flatMap { it.modelList.get() })
-        }.toList()
+        get() = flatNeuronGroupListCache.value
+
+    private fun buildFlatNeuronGroupList() = sequence<NeuronGroup> {
+        yieldAll(networkModels.get<NeuronGroup>())
+        yieldAll(networkModels.get<Subnetwork>().flatMap { it.modelList.get() })
+    }.toList()
 
     /**
-     * Returns a list of all synapse groups including those in subnetworks.
+     * Returns a read-only list of all synapse groups including those in subnetworks.
      */
     val flatSynapseGroupList: List<SynapseGroup>
-        get() = sequence {
-            yieldAll(networkModels.get<SynapseGroup>())
-            yieldAll(networkModels.get<Subnetwork>().flatMap { it.modelList.get() })
-        }.toList()
+        get() = flatSynapseGroupListCache.value
+
+    private fun buildFlatSynapseGroupList() = sequence<SynapseGroup> {
+        yieldAll(networkModels.get<SynapseGroup>())
+        yieldAll(networkModels.get<Subnetwork>().flatMap { it.modelList.get() })
+    }.toList()
 
     /**
-     * Returns a list of all weight matrices including those in subnetworks.
+     * Returns a read-only list of all weight matrices including those in subnetworks.
      */
     val flatWeightMatrixList: List<WeightMatrix>
-        get() = sequence {
-            yieldAll(networkModels.get<WeightMatrix>())
-            yieldAll(networkModels.get<Subnetwork>().flatMap { it.modelList.get() })
-        }.toList()
+        get() = flatWeightMatrixListCache.value
+
+    private fun buildFlatWeightMatrixList() = sequence<WeightMatrix> {
+        yieldAll(networkModels.get<WeightMatrix>())
+        yieldAll(networkModels.get<Subnetwork>().flatMap { it.modelList.get() })
+    }.toList()
+
+    /**
+     * Mark the flat model lists as out of date. Called directly when top-level models are added or removed, and from
+     * event handlers when neurons or synapses are added to or removed from a group (see [trackGroupMembership]).
+     */
+    private fun invalidateFlatLists() {
+        flatNeuronListCache.invalidate()
+        flatSynapseListCache.invalidate()
+        flatNeuronGroupListCache.invalidate()
+        flatSynapseGroupListCache.invalidate()
+        flatWeightMatrixListCache.invalidate()
+        prioritySortedNeuronList.invalidate()
+    }
+
+    /**
+     * Listen for changes to the neurons inside neuron groups and the synapses inside synapse groups, which do not go
+     * through [addNetworkModel]. The changes are handled on the firing thread, so that the flat lists are current as
+     * soon as a neuron or synapse has joined or left a group.
+     */
+    private fun trackGroupMembership(model: NetworkModel) {
+        when (model) {
+            is NeuronGroup -> {
+                model.events.neuronAdded.on(Dispatchers.Unconfined, wait = true) { invalidateFlatLists() }
+                model.events.neuronRemoved.on(Dispatchers.Unconfined, wait = true) { invalidateFlatLists() }
+            }
+            is SynapseGroup -> {
+                model.events.synapseAdded.on(Dispatchers.Unconfined, wait = true) { invalidateFlatLists() }
+                model.events.synapseRemoved.on(Dispatchers.Unconfined, wait = true) { invalidateFlatLists() }
+            }
+            is Subnetwork -> model.modelList.all.forEach { trackGroupMembership(it) }
+        }
+    }
 
     private fun assignId(model: NetworkModel) {
         model.id = idManager.getAndIncrementId(model.javaClass)
@@ -317,7 +457,7 @@ class Network: CoroutineScope, EditableObject {
     }
 
     /**
-     * Add a new [NetworkModel]. All network models must be added using this method.
+     * Add a new [NetworkModel]. All network models must be added using this method, or using [batch].
      * For best results call with `?.await()` when possible.
      */
     @JvmOverloads
@@ -325,27 +465,81 @@ class Network: CoroutineScope, EditableObject {
         if (model.shouldAdd()) {
             assignId(model)
             networkModels.add(model)
-            if (usePlacementManager && model is LocatableModel && model.shouldBePlaced) {
-                placementManager.placeObject(model)
-            }
-            model.events.deleted.on {
-                networkModels.remove(it)
-                events.modelRemoved.fire(it).join()
-                updatePriorityList()
-            }
+            invalidateFlatLists()
+            initializeAddedModel(model, usePlacementManager)
             val deferred = events.modelAdded.fire(model)
-            if (model is Neuron) {
-                model.events.priorityChanged.on { _, _ ->
-                    updatePriorityList()
-                }
-                model.events.updateRuleChanged.on { _, _ -> shouldUpdateTimeType = true }
-                updatePriorityList()
-            }
+            updatePriorityList()
             return deferred
         }
         return null
     }
 
+    /**
+     * Add many models at once. Models passed to [NetworkBatch.add] inside [block] are staged and then added together:
+     * ids are assigned in bulk, the model list and flat lists are updated once, and a single
+     * [NetworkEvents.modelsAdded] event is fired in place of one [NetworkEvents.modelAdded] per model. This keeps the
+     * cost of building large networks linear in the number of models.
+     *
+     * Example:
+     * ```
+     * network.batch {
+     *     addAll(neurons)
+     *     addAll(synapses)
+     * }.await()
+     * ```
+     *
+     * @return the deferred of the batched event, which completes when listeners have handled it.
+     */
+    @JvmOverloads
+    fun batch(usePlacementManager: Boolean = true, block: NetworkBatch.() -> Unit): Deferred<Boolean> {
+        val toAdd = NetworkBatch().apply(block).staged.filter { it.shouldAdd() }
+        toAdd.forEach { assignId(it) }
+        networkModels.addAll(toAdd)
+        invalidateFlatLists()
+        toAdd.forEach { initializeAddedModel(it, usePlacementManager) }
+        updatePriorityList()
+        // Listeners like the GUI need models that others refer to (e.g. the neurons of a synapse) to come first
+        return events.modelsAdded.fire(toAdd.sortedBy { updatingOrder(it) })
+    }
+
+    /**
+     * Stages models to be added by [batch].
+     */
+    class NetworkBatch internal constructor() {
+
+        internal val staged = ArrayList<NetworkModel>()
+
+        fun add(model: NetworkModel) {
+            staged.add(model)
+        }
+
+        fun addAll(models: Collection<NetworkModel>) {
+            staged.addAll(models)
+        }
+    }
+
+    /**
+     * Placement and event handling for a model that has just been put in [networkModels].
+     */
+    private fun initializeAddedModel(model: NetworkModel, usePlacementManager: Boolean) {
+        trackGroupMembership(model)
+        if (usePlacementManager && model is LocatableModel && model.shouldBePlaced) {
+            placementManager.placeObject(model)
+        }
+        model.events.deleted.on {
+            networkModels.remove(it)
+            invalidateFlatLists()
+            events.modelRemoved.fire(it).join()
+            updatePriorityList()
+        }
+        if (model is Neuron) {
+            model.events.priorityChanged.on { _, _ ->
+                updatePriorityList()
+            }
+            model.events.updateRuleChanged.on { _, _ -> shouldUpdateTimeType = true }
+        }
+    }
+
     /**
      * Returns the precision of the current time step.
      *
@@ -360,13 +554,19 @@ class Network: CoroutineScope, EditableObject {
     }
 
     /**
-     * Returns a copy of this network based on its xml rep.
+     * Returns a deep copy of this network, made from a binary [snapshot]. To make many copies of the same network,
+     * take one snapshot and call [networkFromSnapshot] for each copy.
      *
      * @return the copied network.
      */
-    fun copy(): Network {
-        val xmlRepresentation = getNetworkXStream().toXML(this)
-        return getNetworkXStream().fromXML(xmlRepresentation) as Network
+    fun copy(): Network = networkFromSnapshot(snapshot())
+
+    /**
+     * Called by XStream before saving, copying or taking a snapshot, so that saved psrs are up to date.
+     */
+    private fun writeReplace(): Any {
+        compiledNetwork?.syncToModels()
+        return this
     }
 
     /**
@@ -388,15 +588,27 @@ class Network: CoroutineScope, EditableObject {
         prioritySortedNeuronList = CachedObject {
             flatNeuronList.sortedBy { it.updatePriority }.toMutableList()
         }
+        flatNeuronListCache = CachedObject { readOnly(buildFlatNeuronList()) }
+        flatSynapseListCache = CachedObject { readOnly(buildFlatSynapseList()) }
+        flatNeuronGroupListCache = CachedObject { readOnly(buildFlatNeuronGroupList()) }
+        flatSynapseGroupListCache = CachedObject { readOnly(buildFlatSynapseGroupList()) }
+        flatWeightMatrixListCache = CachedObject { readOnly(buildFlatWeightMatrixList()) }
 
         // Initialize update manager
         networkModels.allInUpdatingOrder.forEach { model ->
             model.events.deleted.on(wait = true) {
                 networkModels.remove(it)
+                invalidateFlatLists()
                 events.modelRemoved.fire(it)
             }
+            trackGroupMembership(model)
+        }
+        idManager = SimpleIdManager ({ cls -> networkModels.count(cls) + 1 })
+
+        // Networks saved before parallel update was available
+        if (parallelUpdateChunkSize <= 0) {
+            parallelUpdateChunkSize = 1024
         }
-        idManager = SimpleIdManager ({ cls -> networkModels.getRawModelSet(cls).size + 1 })
         return this
     }
 
@@ -479,19 +691,24 @@ class Network: CoroutineScope, EditableObject {
 
 
     /**
-     * Adds a list of network elements to this network. Used in copy / paste.
+     * Adds a list of network elements to this network as a [batch]. Used in copy / paste and to add the synapses
+     * created by a [org.simbrain.network.connections.ConnectionStrategy].
      *
      * @param toAdd list of objects to add.
+     * @return a list containing the deferred of the batch, so that callers can use `awaitAll()`.
      */
     @JvmOverloads
-    fun addNetworkModels(toAdd: List<NetworkModel>, usePlacementManager: Boolean = true) = toAdd.mapNotNull { addNetworkModel(it, usePlacementManager) }
+    fun addNetworkModels(toAdd: List<NetworkModel>, usePlacementManager: Boolean = true) = listOf(
+        batch(usePlacementManager) { addAll(toAdd) }
+    )
 
     /**
      * Var arg version of addNetworkModels.
      *
      * Ex: addNetworkModels(synapse1, synapse2, neuron1, neuron2, ...)
      */
-    fun addNetworkModels(vararg toAdd: NetworkModel, usePlacementManager: Boolean = true) = toAdd.mapNotNull { addNetworkModel(it, usePlacementManager) }
+    fun addNetworkModels(vararg toAdd: NetworkModel, usePlacementManager: Boolean = true) =
+        addNetworkModels(toAdd.toList(), usePlacementManager)
 
     fun selectModels(models: List<NetworkModel>) {
         events.selected.fire(models)
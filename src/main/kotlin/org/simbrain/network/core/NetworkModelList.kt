@@ -9,32 +9,25 @@ import com.thoughtworks.xstream.io.HierarchicalStreamWriter
 import org.simbrain.network.subnetworks.Subnetwork
 import org.simbrain.util.CachedObject
 import java.util.concurrent.ConcurrentHashMap
-import java.util.concurrent.CopyOnWriteArraySet
+import java.util.*
 
 /**
  * The main data structure for [NetworkModel]s. Wraps a map from classes to ordered sets of those objects.
- * Backed by a linked hash set. Hash set deals with duplication; linked provides an iterator.
+ * Backed by [ModelSet]s, which deal with duplication, preserve insertion order, and can be iterated safely while
+ * models are being added.
  *
  * Used both by [Network] and by [Subnetwork].
  */
 class NetworkModelList {
 
     /**
-     * Backing for the collection: a map from model types to linked hash sets.
+     * Backing for the collection: a map from model types to ordered sets.
      */
     @XStreamImplicit
-    private val networkModels: MutableMap<Class<out NetworkModel>, CopyOnWriteArraySet<NetworkModel>?> = ConcurrentHashMap()
+    private val networkModels: MutableMap<Class<out NetworkModel>, ModelSet<NetworkModel>> = ConcurrentHashMap()
 
-    @Suppress("UNCHECKED_CAST")
     fun <T : NetworkModel> put(modelClass: Class<T>, model: T) {
-        allInUpdatingOrderCache.invalidate()
-        if (modelClass in networkModels) {
-            networkModels[modelClass]!!.add(model)
-        } else {
-            val newSet = CopyOnWriteArraySet<T>()
-            newSet.add(model)
-            networkModels[modelClass] = newSet as CopyOnWriteArraySet<NetworkModel>
-        }
+        putUnsafe(modelClass, model)
     }
 
     /**
@@ -42,45 +35,40 @@ class NetworkModelList {
      * use with caution.
      */
     fun putUnsafe(modelClass: Class<out NetworkModel>, model: NetworkModel) {
-        allInUpdatingOrderCache.invalidate()
-        if (modelClass in networkModels) {
-            networkModels[modelClass]!!.add(model)
-        } else {
-            val newSet = CopyOnWriteArraySet<NetworkModel>()
-            newSet.add(model)
-            networkModels[modelClass] = newSet
-        }
+        invalidateCaches()
+        networkModels.computeIfAbsent(modelClass) { ModelSet() }.add(model)
     }
 
     /**
-     * Add a collection of network models to the map.
+     * Add a collection of network models to the map. Caches are only invalidated once, so adding many models this way
+     * takes time linear in the number of models.
      */
     fun addAll(models: Collection<NetworkModel>) {
-        models.forEach { add(it) }
+        invalidateCaches()
+        models.groupBy { modelClass(it) }.forEach { (modelClass, group) ->
+            networkModels.computeIfAbsent(modelClass) { ModelSet() }.addAll(group)
+        }
     }
 
     /**
      * Add a network model to the map.
      */
     fun add(model: NetworkModel) {
-        allInUpdatingOrderCache.invalidate()
-        if (model is Subnetwork) {
-            put(Subnetwork::class.java, model)
-        } else {
-            put(model.javaClass, model)
-        }
+        putUnsafe(modelClass(model), model)
     }
 
     /**
-     * Returns an ordered set of network models of a specific type.
+     * Forces all subclasses of subnetwork to be grouped with the subnetwork class.
+     */
+    private fun modelClass(model: NetworkModel) = if (model is Subnetwork) Subnetwork::class.java else model.javaClass
+
+    /**
+     * Returns an ordered, read-only set of network models of a specific type. The set is a snapshot, so it can be
+     * iterated while models are added or removed.
      */
     @Suppress("UNCHECKED_CAST")
-    operator fun <T : NetworkModel> get(modelClass: Class<T>): CopyOnWriteArraySet<T> {
-        return if (networkModels.containsKey(modelClass)) {
-            networkModels[modelClass] as CopyOnWriteArraySet<T>
-        } else {
-            CopyOnWriteArraySet()
-        }
+    operator fun <T : NetworkModel> get(modelClass: Class<T>): Set<T> {
+        return (networkModels[modelClass]?.snapshot() ?: emptySet()) as Set<T>
     }
 
     @Suppress("UNCHECKED_CAST")
@@ -90,16 +78,17 @@ class NetworkModelList {
      * Returns a set corresponding to the provided network model type.
      * Does not guarantee that the returned set contains models of that type.
      */
-    fun getRawModelSet(modelClass: Class<*>?): CopyOnWriteArraySet<*> {
-        return if (networkModels.containsKey(modelClass)) {
-            networkModels[modelClass]!!
-        } else {
-            CopyOnWriteArraySet<NetworkModel>()
-        }
+    fun getRawModelSet(modelClass: Class<*>?): Set<*> {
+        return networkModels[modelClass]?.snapshot() ?: emptySet<NetworkModel>()
     }
 
+    /**
+     * Number of models of the provided type. Cheaper than taking the size of [getRawModelSet].
+     */
+    fun count(modelClass: Class<*>?): Int = networkModels[modelClass]?.size ?: 0
+
     val all: List<NetworkModel>
-        get() = networkModels.values.flatMap { it?.map { item -> item } ?: listOf() }
+        get() = networkModels.values.flatMap { it.snapshot() }
 
     private val allInUpdatingOrderCache = CachedObject { all.sortedBy { updatingOrder(it) } }
 
@@ -109,14 +98,25 @@ class NetworkModelList {
      */
     val allInUpdatingOrder by allInUpdatingOrderCache::value
 
-    fun remove(model: NetworkModel) {
+    private val updatingTiersCache = CachedObject {
+        allInUpdatingOrder.groupBy { updatingOrder(it) }.values.toList()
+    }
+
+    /**
+     * [allInUpdatingOrder] split into consecutive "tiers" of models that share the same [updatingOrder]. Models in
+     * one tier can be updated independently of one another, which is what
+     * [org.simbrain.network.update_actions.ParallelBufferedUpdate] relies on.
+     */
+    val updatingTiers by updatingTiersCache::value
+
+    private fun invalidateCaches() {
         allInUpdatingOrderCache.invalidate()
-        if (model is Subnetwork) {
-            // Forces all subclasses of subnetwork to be grouped with the subnetwork class
-            networkModels[Subnetwork::class.java]?.remove(model)
-        } else {
-            networkModels[model.javaClass]?.remove(model)
-        }
+        updatingTiersCache.invalidate()
+    }
+
+    fun remove(model: NetworkModel) {
+        invalidateCaches()
+        networkModels[modelClass(model)]?.remove(model)
     }
 
 
@@ -124,7 +124,41 @@ class NetworkModelList {
 
     fun toStringTabbed(): String =  all.joinToString("\n") { "\t$it" }
 
-    val size get() = networkModels.values.sumBy { it?.size ?: 0 }
+    val size get() = networkModels.values.sumOf { it.size }
+}
+
+/**
+ * An insertion-ordered set of models that is cheap to add to and safe to iterate while it is being modified.
+ *
+ * Writers update a [LinkedHashSet] under a lock. Readers get an immutable snapshot, which is only copied again after
+ * the set has changed. Adding n models and then reading them is linear in n, whereas a
+ * [java.util.concurrent.CopyOnWriteArraySet] copies its whole array on every add.
+ */
+class ModelSet<T> {
+
+    private val models = LinkedHashSet<T>()
+
+    @Volatile
+    private var snapshot: Set<T>? = emptySet()
+
+    val size: Int
+        get() = synchronized(this) { models.size }
+
+    @Synchronized
+    fun add(model: T): Boolean = models.add(model).also { if (it) snapshot = null }
+
+    @Synchronized
+    fun addAll(toAdd: Collection<T>): Boolean = models.addAll(toAdd).also { if (it) snapshot = null }
+
+    @Synchronized
+    fun remove(model: T): Boolean = models.remove(model).also { if (it) snapshot = null }
+
+    /**
+     * A read-only copy of the current contents, in insertion order.
+     */
+    fun snapshot(): Set<T> = snapshot ?: synchronized(this) {
+        snapshot ?: Collections.unmodifiableSet(LinkedHashSet(models)).also { snapshot = it }
+    }
 }
 
 /**
@@ -21,6 +21,8 @@ package org.simbrain.network.core
 import org.simbrain.network.neurongroups.NeuronGroup
 import org.simbrain.network.subnetworks.Subnetwork
 import org.simbrain.network.update_actions.BufferedUpdate
+import org.simbrain.network.update_actions.CompiledUpdate
+import org.simbrain.network.update_actions.ParallelBufferedUpdate
 import org.simbrain.network.update_actions.PriorityUpdate
 import org.simbrain.network.update_actions.UpdateNetworkModel
 import org.simbrain.workspace.updater.UpdateAction
@@ -70,6 +72,8 @@ class NetworkUpdateManager(private val network: Network) {
             val availableActionList = buildList {
                 // By default these actions are always available
                 add(BufferedUpdate(network))
+                add(ParallelBufferedUpdate(network))
+                add(CompiledUpdate(network))
                 add(PriorityUpdate(network))
 
                 addAll(actionableModels.map { UpdateNetworkModel(it, network) })
@@ -82,9 +82,9 @@ class NeuronArray(inputSize: Int) : ArrayLayer(inputSize), EditableObject, Attri
      */
     @get:Producible
     override val spikes: DoubleArray
-        get() = (dataHolder as? SpikingMatrixData)?.spikes?.map { if (it) 1.0 else 0.0 }?.toDoubleArray() ?: DoubleArray(
-            size
-        )
+        get() = (dataHolder as? SpikingMatrixData)?.spikes?.let { spikes ->
+            DoubleArray(size) { if (spikes[it]) 1.0 else 0.0 }
+        } ?: DoubleArray(size)
 
     private var targets: Matrix? = null
 
@@ -165,7 +165,7 @@ class NeuronArray(inputSize: Int) : ArrayLayer(inputSize), EditableObject, Attri
         return copy
     }
 
-    @get:Producible(arrayDescriptionMethod = "getLabelArray")
+    @get:Producible(arrayDescriptionMethod = "getLabelArray", vectorMethod = "getActivations")
     override val activationArray: DoubleArray
         get() = activations.toDoubleArray()
 
@@ -236,7 +236,7 @@ class NeuronArray(inputSize: Int) : ArrayLayer(inputSize), EditableObject, Attri
         events.updated.fire()
     }
 
-    @Consumable
+    @Consumable(vectorMethod = "setActivations")
     override fun setActivations(activations: DoubleArray) {
         this.activations = Matrix.column(activations)
     }
@@ -292,8 +292,13 @@ class NeuronArray(inputSize: Int) : ArrayLayer(inputSize), EditableObject, Attri
      */
     val excitatoryInputs: DoubleArray
         get() = incomingConnectors
-            .filterIsInstance<WeightMatrix>()
-            .map { it.psrMatrix.clone().mul(it.excitatoryMask).rowSums() }
+            .mapNotNull {
+                when (it) {
+                    is WeightMatrix -> it.excitatoryInputs
+                    is SparseWeightMatrix -> it.excitatoryInputs
+                    else -> null
+                }
+            }
             .reduceOrNull { base, add -> SimbrainMath.addVector(base, add) }
             ?: DoubleArray(size)
 
@@ -303,8 +308,13 @@ class NeuronArray(inputSize: Int) : ArrayLayer(inputSize), EditableObject, Attri
      */
     val inhibitoryInputs: DoubleArray
         get() = incomingConnectors
-            .filterIsInstance<WeightMatrix>()
-            .map { it.psrMatrix.clone().mul(it.inhibitoryMask).rowSums() }
+            .mapNotNull {
+                when (it) {
+                    is WeightMatrix -> it.inhibitoryInputs
+                    is SparseWeightMatrix -> it.inhibitoryInputs
+                    else -> null
+                }
+            }
             .reduceOrNull { base, add -> SimbrainMath.addVector(base, add) }
             ?: DoubleArray(size)
 
@@ -0,0 +1,332 @@
+package org.simbrain.network.core
+
+import org.simbrain.network.gui.dialogs.NetworkPreferences.weightRandomizer
+import org.simbrain.network.gui.nodes.ActivationSequenceProcessor
+import org.simbrain.network.learningrules.StaticSynapseRule
+import org.simbrain.network.learningrules.SynapseUpdateRule
+import org.simbrain.network.util.EmptyMatrixData
+import org.simbrain.network.util.MatrixDataHolder
+import org.simbrain.util.UserParameter
+import org.simbrain.util.propertyeditor.GuiEditable
+import org.simbrain.util.stats.ProbabilityDistribution
+import org.simbrain.workspace.Producible
+import smile.math.matrix.Matrix
+
+/**
+ * A sparse weight matrix that connects a source and target [Layer]. Only the non-zero entries are stored, in
+ * compressed sparse row (CSR) format, so memory scales with the number of connections rather than with
+ * source size × target size. Use it in place of a [WeightMatrix] for large, sparsely connected layers.
+ *
+ * As with [WeightMatrix], rows correspond to the target layer and columns to the source layer. The entries of row i
+ * are at indices [rowPointers]&#91;i] until [rowPointers]&#91;i + 1] of [columnIndices] and [values], with column indices
+ * sorted within each row.
+ *
+ * Only connectionist (non-spiking) transmission is supported. The dense [psrMatrix] is only built when something asks
+ * for it; weighted inputs, and excitatory and inhibitory input sums, are computed directly from the sparse entries.
+ *
+ * Learning rules update the matrix through [updateEntries], which only visits stored entries (see e.g.
+ * [org.simbrain.network.learningrules.HebbianRule]). Entries are never added or removed by learning.
+ */
+class SparseWeightMatrix @JvmOverloads constructor(
+    source: Layer,
+    target: Layer,
+    rowPointers: IntArray = IntArray(target.size + 1),
+    columnIndices: IntArray = IntArray(0),
+    values: DoubleArray = DoubleArray(0)
+) : Connector(source, target) {
+
+    @UserParameter(label = "Increment amount", increment = .1, order = 20)
+    var increment = .1
+
+    @UserParameter(label = "Learning Rule", order = 100)
+    var learningRule: SynapseUpdateRule<*, *> = StaticSynapseRule()
+
+    /**
+     * Holds data for learning rule.
+     */
+    var learningRuleData: MatrixDataHolder by GuiEditable(
+        initValue = EmptyMatrixData,
+        order = 210,
+        label = "Learning Rule Data",
+        tab = "Data"
+    )
+
+    /**
+     * CSR row pointers, one per target neuron plus one.
+     */
+    var rowPointers: IntArray = rowPointers
+        private set
+
+    /**
+     * Source (column) index of each stored entry.
+     */
+    var columnIndices: IntArray = columnIndices
+        private set
+
+    /**
+     * Weight of each stored entry.
+     */
+    var values: DoubleArray = values
+        private set
+
+    /**
+     * Number of rows, i.e. the size of the target layer.
+     */
+    val nrow get() = rowPointers.size - 1
+
+    /**
+     * Number of columns, i.e. the size of the source layer.
+     */
+    val ncol = source.size
+
+    /**
+     * Number of stored entries.
+     */
+    val nonZeroCount get() = values.size
+
+    /**
+     * Weighted inputs to the target computed by the last update.
+     */
+    @Transient
+    private var summedPSRs: DoubleArray? = null
+
+    /**
+     * Source activations used in the last update. Used to build [psrMatrix] and the excitatory and inhibitory input
+     * sums on demand.
+     */
+    @Transient
+    private var lastSourceActivations: DoubleArray? = null
+
+    init {
+        require(rowPointers.size == target.size + 1) {
+            "Row pointers must have one entry per target neuron plus one, but has ${rowPointers.size} entries for ${target.size} targets"
+        }
+        require(columnIndices.size == values.size) {
+            "Column indices (${columnIndices.size}) and values (${values.size}) must have the same size"
+        }
+        require(rowPointers.last() == values.size) {
+            "Last row pointer must equal the number of entries"
+        }
+        source.addOutgoingConnector(this)
+        target.addIncomingConnector(this)
+    }
+
+    /**
+     * The dense matrix of post-synaptic responses, built from the current weights and the source activations used in
+     * the last update. This allocates a full target × source matrix, so avoid it for large matrices.
+     */
+    override val psrMatrix: Matrix
+        get() {
+            val psrs = Matrix(nrow, ncol)
+            val sourceActivations = lastSourceActivations ?: return psrs
+            forEachEntry { i, j, w -> psrs[i, j] = w * sourceActivations[j] }
+            return psrs
+        }
+
+    @get:Producible
+    val weights: DoubleArray
+        get() = values.copyOf()
+
+    /**
+     * Returns the weight from source j to target i, or 0 if there is no entry.
+     */
+    operator fun get(i: Int, j: Int): Double {
+        val k = indexOf(i, j)
+        return if (k >= 0) values[k] else 0.0
+    }
+
+    /**
+     * Sets the weight from source j to target i. Setting a missing entry inserts it, which copies the storage.
+     */
+    operator fun set(i: Int, j: Int, value: Double) {
+        val k = indexOf(i, j)
+        if (k >= 0) {
+            values[k] = value
+            return
+        }
+        val insertAt = -(k + 1)
+        columnIndices = columnIndices.copyOfRange(0, insertAt) + j +
+                columnIndices.copyOfRange(insertAt, columnIndices.size)
+        values = values.copyOfRange(0, insertAt) + value + values.copyOfRange(insertAt, values.size)
+        for (r in i + 1..nrow) {
+            rowPointers[r]++
+        }
+    }
+
+    /**
+     * Index of entry (i, j) in [values], or (-(insertion point) - 1) if it is not stored.
+     */
+    private fun indexOf(i: Int, j: Int): Int {
+        if (i !in 0 until nrow || j !in 0 until ncol) {
+            throw IndexOutOfBoundsException("($i, $j) is outside a $nrow x $ncol matrix")
+        }
+        var low = rowPointers[i]
+        var high = rowPointers[i + 1] - 1
+        while (low <= high) {
+            val mid = (low + high) ushr 1
+            val col = columnIndices[mid]
+            when {
+                col < j -> low = mid + 1
+                col > j -> high = mid - 1
+                else -> return mid
+            }
+        }
+        return -(low + 1)
+    }
+
+    /**
+     * Replace the stored entries. Entries are given as parallel arrays of target (row) indices, source (column)
+     * indices and weights, in any order. Duplicate (row, column) pairs are not allowed.
+     */
+    fun setEntries(rows: IntArray, cols: IntArray, weights: DoubleArray) {
+        require(rows.size == cols.size && cols.size == weights.size) { "Entry arrays must have the same size" }
+        val order = rows.indices.sortedWith(compareBy({ rows[it] }, { cols[it] }))
+        val newRowPointers = IntArray(nrow + 1)
+        rows.forEach {
+            if (it !in 0 until nrow) throw IndexOutOfBoundsException("Row $it is outside a matrix with $nrow rows")
+            newRowPointers[it + 1]++
+        }
+        for (i in 0 until nrow) {
+            newRowPointers[i + 1] += newRowPointers[i]
+        }
+        val newColumnIndices = IntArray(order.size) { cols[order[it]] }
+        for (k in 1 until order.size) {
+            require(rows[order[k]] != rows[order[k - 1]] || newColumnIndices[k] != newColumnIndices[k - 1]) {
+                "Duplicate entry (${rows[order[k]]}, ${newColumnIndices[k]})"
+            }
+        }
+        newColumnIndices.forEach {
+            if (it !in 0 until ncol) throw IndexOutOfBoundsException("Column $it is outside a matrix with $ncol columns")
+        }
+        rowPointers = newRowPointers
+        columnIndices = newColumnIndices
+        values = DoubleArray(order.size) { weights[order[it]] }
+        summedPSRs = null
+        events.updated.fire()
+    }
+
+    /**
+     * Call [action] with the target index, source index, and weight of each stored entry, in row order.
+     */
+    inline fun forEachEntry(action: (i: Int, j: Int, w: Double) -> Unit) {
+        val rowPointers = rowPointers
+        val columnIndices = columnIndices
+        val values = values
+        for (i in 0 until rowPointers.size - 1) {
+            for (k in rowPointers[i] until rowPointers[i + 1]) {
+                action(i, columnIndices[k], values[k])
+            }
+        }
+    }
+
+    /**
+     * Replace each stored weight with the result of [transform] applied to its target index, source index, and
+     * current weight. This is the hook used by learning rules.
+     */
+    inline fun updateEntries(transform: (i: Int, j: Int, w: Double) -> Double) {
+        val rowPointers = rowPointers
+        val columnIndices = columnIndices
+        val values = values
+        for (i in 0 until rowPointers.size - 1) {
+            for (k in rowPointers[i] until rowPointers[i + 1]) {
+                values[k] = transform(i, columnIndices[k], values[k])
+            }
+        }
+    }
+
+    /**
+     * Returns a dense copy of this matrix.
+     */
+    fun toDenseMatrix(): Matrix {
+        val dense = Matrix(nrow, ncol)
+        forEachEntry { i, j, w -> dense[i, j] = w }
+        return dense
+    }
+
+    context(Network)
+    override fun update() {
+        if (learningRule !is StaticSynapseRule) {
+            learningRule.apply(this, learningRuleData)
+            events.updated.fire()
+        }
+    }
+
+    /**
+     * Compute the weighted inputs to the target as a sparse matrix-vector product.
+     */
+    context(Network)
+    override fun updatePSR() {
+        val sourceActivations = if (source is ActivationSequenceProcessor) {
+            source.activations.row(source.activations.nrow() - 1)
+        } else {
+            source.activations.col(0)
+        }
+        val weightedInputs = summedPSRs?.takeIf { it.size == nrow } ?: DoubleArray(nrow)
+        for (i in 0 until nrow) {
+            var sum = 0.0
+            for (k in rowPointers[i] until rowPointers[i + 1]) {
+                sum += values[k] * sourceActivations[columnIndices[k]]
+            }
+            weightedInputs[i] = sum
+        }
+        summedPSRs = weightedInputs
+        lastSourceActivations = sourceActivations
+    }
+
+    override fun getSummedPSRs(): DoubleArray {
+        return summedPSRs ?: DoubleArray(nrow)
+    }
+
+    /**
+     * Sum of post-synaptic responses through positive weights, for each target neuron.
+     */
+    val excitatoryInputs: DoubleArray
+        get() = signedInputs { it > 0 }
+
+    /**
+     * Sum of post-synaptic responses through negative weights, for each target neuron.
+     */
+    val inhibitoryInputs: DoubleArray
+        get() = signedInputs { it < 0 }
+
+    private inline fun signedInputs(include: (Double) -> Boolean): DoubleArray {
+        val result = DoubleArray(nrow)
+        val sourceActivations = lastSourceActivations ?: return result
+        forEachEntry { i, j, w ->
+            if (include(w)) {
+                result[i] += w * sourceActivations[j]
+            }
+        }
+        return result
+    }
+
+    override fun randomize(randomizer: ProbabilityDistribution?) {
+        updateEntries { _, _, _ -> (randomizer ?: weightRandomizer).sampleDouble() }
+        events.updated.fire()
+    }
+
+    override fun increment() {
+        updateEntries { _, _, w -> w + increment }
+        events.updated.fire()
+    }
+
+    override fun decrement() {
+        updateEntries { _, _, w -> w - increment }
+        events.updated.fire()
+    }
+
+    /**
+     * Set all stored entries to 0 without removing them.
+     */
+    override fun clear() {
+        values.fill(0.0)
+        events.updated.fire()
+    }
+
+    override fun toString(): String {
+        return (id
+                + " (" + nrow + "x" + ncol + ", " + nonZeroCount + " entries) "
+                + "connecting " + source.id + " to " + target.id)
+    }
+
+}
@@ -18,6 +18,7 @@
  */
 package org.simbrain.network.core
 
+import kotlinx.coroutines.Dispatchers
 import org.simbrain.network.events.SynapseEvents
 import org.simbrain.network.gui.dialogs.NetworkPreferences.excitatoryRandomizer
 import org.simbrain.network.gui.dialogs.NetworkPreferences.inhibitoryRandomizer
@@ -125,8 +126,26 @@ class Synapse : NetworkModel, EditableObject, AttributeContainer {
      *
      * In the case of a non-spiking node this is the product of the source activation and the
      * weight of a synapse, i.e. one term in a classical weighted input.
+     *
+     * When this synapse is compiled (see [compiledBy]), the value from the last update is written back on first access.
      */
     var psr: Double = 0.0
+        get() {
+            compiledBy?.syncToModels()
+            return field
+        }
+        set(value) {
+            compiledBy?.syncToModels()
+            field = value
+        }
+
+    /**
+     * The [CompiledNetwork] whose kernel computes this synapse's response, if any. Its update does not write [psr], so
+     * [psr] asks it to write back pending values when read.
+     */
+    @Transient
+    var compiledBy: CompiledNetwork? = null
+        internal set
 
     /**
      * Amount to increment the neuron.
@@ -268,8 +287,9 @@ class Synapse : NetworkModel, EditableObject, AttributeContainer {
             source.addToFanOut(this)
             target.addToFanIn(this)
         }
-        source.events.locationChanged.on { events.locationChanged.fire() }
-        target.events.locationChanged.on { events.locationChanged.fire() }
+        // Relaying is cheap, so do it on the firing thread rather than launching a coroutine per synapse
+        source.events.locationChanged.on(Dispatchers.Unconfined) { events.locationChanged.fire() }
+        target.events.locationChanged.on(Dispatchers.Unconfined) { events.locationChanged.fire() }
     }
 
     /**
@@ -5,8 +5,10 @@ import org.simbrain.network.gui.nodes.ActivationSequenceProcessor
 import org.simbrain.util.*
 import org.simbrain.util.propertyeditor.EditableObject
 import org.simbrain.util.stats.ProbabilityDistribution
+import smile.math.blas.Transpose
 import smile.math.matrix.Matrix
 import kotlin.math.exp
+import kotlin.math.max
 import kotlin.math.sqrt
 
 class TransformerBlock(val sequenceSize: Int, inputSize: Int, val hiddenSize: Int): ArrayLayer(inputSize), EditableObject, ActivationSequenceProcessor {
@@ -16,6 +18,9 @@ class TransformerBlock(val sequenceSize: Int, inputSize: Int, val hiddenSize: In
     @UserParameter(label = "Activations", description = "Activations in the sequence", order = 1)
     override var activations: Matrix = Matrix(sequenceSize, inputSize)
 
+    @UserParameter(label = "Causal", description = "Each position in the sequence only attends to itself and earlier positions", order = 2)
+    var causal = false
+
     @UserParameter(label = "Matrix Visibility", description = "Show the QKV matrices", order = 10)
     var matrixVisibility = true
         set(value) {
@@ -69,10 +74,56 @@ class TransformerBlock(val sequenceSize: Int, inputSize: Int, val hiddenSize: In
 
     override val size: Int = inputSize
 
+    /**
+     * Buffers reused by [update], and what is needed to reuse the q, k and v rows of the last update.
+     */
+    private inner class Scratch {
+
+        /**
+         * Q, K and V side by side, so that the inputs are projected with one matrix product.
+         */
+        val qkvWeights = Matrix(inputSize, 3 * inputSize)
+
+        /**
+         * The q, k and v rows side by side, as computed with [qkvWeights].
+         */
+        val qkv = Matrix(sequenceSize, 3 * inputSize)
+
+        val previousInputs = Matrix(sequenceSize, inputSize)
+
+        /**
+         * Whether the stacks hold the projections of [previousInputs] with [qkvWeights].
+         */
+        var valid = false
+
+        /**
+         * Copy Q, K and V into [qkvWeights] and return whether they changed since the last copy.
+         */
+        fun updateWeights() = copyBlock(Q, 0) or copyBlock(K, inputSize) or copyBlock(V, 2 * inputSize)
+
+        private fun copyBlock(weights: Matrix, offset: Int): Boolean {
+            var changed = false
+            for (j in 0 until inputSize) {
+                for (i in 0 until inputSize) {
+                    val w = weights[i, j]
+                    if (qkvWeights[i, offset + j] != w) {
+                        qkvWeights[i, offset + j] = w
+                        changed = true
+                    }
+                }
+            }
+            return changed
+        }
+    }
+
+    @Transient
+    private var scratch: Scratch? = null
+
     context(Network) override fun accumulateInputs() {
-        val matrix = (incomingConnectors.firstOrNull() as? WeightMatrix)?.weightMatrix
+        val matrix = (incomingConnectors.firstOrNull() as? WeightMatrix)?.weightMatrix ?: return
         (incomingConnectors.firstOrNull()?.source as? ActivationSequenceProcessor)?.let { source ->
-            inputs.add(source.activations.mm(matrix?.transpose()))
+            // inputs += activations * matrix^T, in place
+            inputs.mm(Transpose.NO_TRANSPOSE, source.activations, Transpose.TRANSPOSE, matrix, 1.0, 1.0)
         }
     }
 
@@ -81,53 +132,196 @@ class TransformerBlock(val sequenceSize: Int, inputSize: Int, val hiddenSize: In
             randomize((randomizer ?: weightRandomizer))
         }
         listOf(K, Q, V, W1, b1, W2, b2).forEach { it.applyRandomizer() }
+        clearCache()
         events.updated.fire()
     }
 
-    private fun softmaxRow(row: DoubleArray): DoubleArray {
-        val max = row.maxOrNull() ?: 0.0  // For numerical stability
-        val expValues = row.map { exp(it - max) }
-        val sumExp = expValues.sum()
-        return expValues.map { it / sumExp }.toDoubleArray()
+    /**
+     * Forget the q, k and v rows kept from the last update, e.g. after the stacks were edited.
+     */
+    fun clearCache() {
+        scratch?.valid = false
     }
 
-
+    /**
+     * Computes the block into the existing matrices with in-place matrix products, without allocating.
+     *
+     * The q, k and v rows are projected together with one product of the inputs and Q, K and V side by side. When the
+     * inputs are the previous inputs moved up by one row, as when a sequence advances by one token, and the weights
+     * have not changed, the existing q, k and v rows are moved up as well and only the last row is computed.
+     */
     context(Network) override fun update() {
         if (isClamped) {
             return
         }
 
-        val scale = sqrt(inputSize.toDouble())
+        val buffers = scratch ?: Scratch().also { scratch = it }
+        val firstNewRow = reuseProjections(buffers)
+        if (firstNewRow == 0) {
+            projectAll(buffers)
+        } else if (firstNewRow < sequenceSize) {
+            projectRow(firstNewRow)
+        }
+        buffers.previousInputs.copyFrom(inputs)
+        buffers.valid = true
+
+        // Scaled scores of each query against each key, softmaxed row by row
+        val scale = 1 / sqrt(inputSize.toDouble())
+        selfAttention.mm(Transpose.NO_TRANSPOSE, qStack, Transpose.TRANSPOSE, kStack, scale, 0.0)
+        for (t in 0 until sequenceSize) {
+            softmaxRow(t)
+        }
 
-        kStack.copyFrom(inputs.mm(K))
-        qStack.copyFrom(inputs.mm(Q))
-        vStack.copyFrom(inputs.mm(V))
+        // Residual connection and layer norm
+        feedForwardInput.copyFrom(inputs)
+        feedForwardInput.mm(Transpose.NO_TRANSPOSE, selfAttention, Transpose.NO_TRANSPOSE, vStack, 1.0, 1.0)
+        feedForwardInput.layerNormRows()
+
+        feedForwardHidden.copyFrom(b1)
+        feedForwardHidden.mm(Transpose.NO_TRANSPOSE, feedForwardInput, Transpose.NO_TRANSPOSE, W1, 1.0, 1.0)
+        for (h in 0 until hiddenSize) {
+            for (t in 0 until sequenceSize) {
+                feedForwardHidden[t, h] = max(0.0, feedForwardHidden[t, h])
+            }
+        }
 
-        selfAttention.copyFrom(qStack.mm(kStack.transpose()))
-        selfAttention.div(scale)
+        activations.copyFrom(feedForwardInput)
+        activations.add(b2)
+        activations.mm(Transpose.NO_TRANSPOSE, feedForwardHidden, Transpose.NO_TRANSPOSE, W2, 1.0, 1.0)
+        activations.layerNormRows()
+
+        inputs.mul(0.0)
+        events.updated.fire()
+    }
+
+    /**
+     * Reuse the q, k and v rows of the last update where possible and return the first row that must be computed.
+     */
+    private fun reuseProjections(buffers: Scratch): Int {
+        val weightsChanged = buffers.updateWeights()
+        if (!buffers.valid || weightsChanged) {
+            return 0
+        }
+        val previous = buffers.previousInputs
+        if (rowsEqual(previous, 0, 0, sequenceSize)) {
+            return sequenceSize
+        }
+        if (sequenceSize < 2 || !rowsEqual(previous, 1, 0, sequenceSize - 1)) {
+            return 0
+        }
+        qStack.moveRowsUp()
+        kStack.moveRowsUp()
+        vStack.moveRowsUp()
+        return sequenceSize - 1
+    }
 
-        // Apply softmax to each row
-        (0 until selfAttention.nrow())
-            .map { selfAttention.row(it) }
-            .map { row ->
-                softmaxRow(row)
-            }.toTypedArray()
-            .toMatrix()
-            .let { selfAttention.copyFrom(it) }
+    private fun Matrix.moveRowsUp() {
+        for (t in 0 until nrow() - 1) {
+            for (j in 0 until ncol()) {
+                this[t, j] = this[t + 1, j]
+            }
+        }
+    }
 
-        val attentionOutput = selfAttention.mm(vStack)
+    /**
+     * Whether [count] rows of [previous] starting at [previousStart] equal those of [inputs] starting at [start].
+     */
+    private fun rowsEqual(previous: Matrix, previousStart: Int, start: Int, count: Int): Boolean {
+        for (t in 0 until count) {
+            for (j in 0 until inputSize) {
+                if (previous[previousStart + t, j] != inputs[start + t, j]) {
+                    return false
+                }
+            }
+        }
+        return true
+    }
 
-        feedForwardInput.copyFrom(inputs.clone().add(attentionOutput).layerNorm())
+    /**
+     * Compute all rows of the q, k and v stacks with one matrix product.
+     */
+    private fun projectAll(buffers: Scratch) {
+        val qkv = buffers.qkv
+        qkv.mm(Transpose.NO_TRANSPOSE, inputs, Transpose.NO_TRANSPOSE, buffers.qkvWeights, 1.0, 0.0)
+        for (j in 0 until inputSize) {
+            for (t in 0 until sequenceSize) {
+                qStack[t, j] = qkv[t, j]
+                kStack[t, j] = qkv[t, inputSize + j]
+                vStack[t, j] = qkv[t, 2 * inputSize + j]
+            }
+        }
+    }
 
-        feedForwardHidden.copyFrom(feedForwardInput.mm(W1).add(b1).relu())
+    /**
+     * Compute row [t] of the q, k and v stacks in one pass over the input row. Used when only one row is new, where a
+     * matrix product would not pay off.
+     */
+    private fun projectRow(t: Int) {
+        for (j in 0 until inputSize) {
+            var q = 0.0
+            var k = 0.0
+            var v = 0.0
+            for (i in 0 until inputSize) {
+                val x = inputs[t, i]
+                q += x * Q[i, j]
+                k += x * K[i, j]
+                v += x * V[i, j]
+            }
+            qStack[t, j] = q
+            kStack[t, j] = k
+            vStack[t, j] = v
+        }
+    }
 
-        activations.copyFrom(feedForwardInput.add(feedForwardHidden.mm(W2).add(b2)).layerNorm())
+    /**
+     * Softmax row [t] of the attention scores in place. The maximum score is subtracted before exponentiating for
+     * numerical stability. With [causal], later positions get zero attention.
+     */
+    private fun softmaxRow(t: Int) {
+        val last = if (causal) t else sequenceSize - 1
+        var maxScore = Double.NEGATIVE_INFINITY
+        for (s in 0..last) {
+            maxScore = max(maxScore, selfAttention[t, s])
+        }
+        var sum = 0.0
+        for (s in 0..last) {
+            val e = exp(selfAttention[t, s] - maxScore)
+            selfAttention[t, s] = e
+            sum += e
+        }
+        for (s in 0..last) {
+            selfAttention[t, s] /= sum
+        }
+        for (s in last + 1 until sequenceSize) {
+            selfAttention[t, s] = 0.0
+        }
+    }
 
-        inputs.mul(0.0)
-        events.updated.fire()
+    /**
+     * Normalize each row to zero mean and unit variance in place, as in [Matrix.layerNorm].
+     */
+    private fun Matrix.layerNormRows(epsilon: Double = 1e-5) {
+        val n = ncol()
+        for (t in 0 until nrow()) {
+            var mean = 0.0
+            for (j in 0 until n) {
+                mean += this[t, j]
+            }
+            mean /= n
+            var variance = 0.0
+            for (j in 0 until n) {
+                variance += (this[t, j] - mean) * (this[t, j] - mean)
+            }
+            variance /= n
+            val std = sqrt(variance + epsilon)
+            for (j in 0 until n) {
+                this[t, j] = (this[t, j] - mean) / std
+            }
+        }
     }
 
     fun copy() = TransformerBlock(sequenceSize, inputSize, hiddenSize).also {
+        it.causal = causal
         it.activations.copyFrom(activations)
         it.K.copyFrom(K)
         it.Q.copyFrom(Q)
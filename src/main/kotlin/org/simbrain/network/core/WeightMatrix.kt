@@ -13,6 +13,7 @@ import org.simbrain.util.propertyeditor.GuiEditable
 import org.simbrain.util.stats.ProbabilityDistribution
 import org.simbrain.workspace.Consumable
 import org.simbrain.workspace.Producible
+import smile.math.blas.Transpose
 import smile.math.matrix.Matrix
 import kotlin.math.min
 
@@ -79,22 +80,41 @@ class WeightMatrix(source: Layer, target: Layer) : Connector(source, target) {
     @get:Producible
     val weightMatrix: Matrix
 
+    /**
+     * In the connectionist case the psr matrix is only built when something asks for it, from the current weights and
+     * the source activations used in the last update. See [updatePSR].
+     */
     @UserParameter(label = "PSR Matrix", order = 300, tab = "Data")
-    override var psrMatrix: Matrix
+    override var psrMatrix: Matrix = Matrix(target.size, source.size)
+        get() {
+            pendingSourceActivations?.let { sourceActivations ->
+                pendingSourceActivations = null
+                for (i in 0 until field.nrow()) {
+                    for (j in 0 until field.ncol()) {
+                        field[i, j] = weightMatrix[i, j] * sourceActivations[j]
+                    }
+                }
+            }
+            return field
+        }
+        set(value) {
+            pendingSourceActivations = null
+            summedPSRs = null
+            field = value
+        }
 
     /**
-     * A binary matrix with 1s corresponding to entries of the weight matrix that are greater than 1 and thus
-     * excitatory, and 0s otherwise. Used by [.getExcitatoryOutputs]
+     * Weighted inputs to the target layer computed by the last connectionist update, i.e. the row sums of the psr
+     * matrix. Null when they must be computed from [psrMatrix].
      */
     @Transient
-    val excitatoryMask: Matrix
+    private var summedPSRs: DoubleArray? = null
 
     /**
-     * A binary matrix with 1s corresponding to entries of the weight matrix that are less than 1 and thus
-     * inhibitory, and 0s otherwise. Used by [.getInhibitoryOutputs] }
+     * Source activations used in the last connectionist update, if [psrMatrix] has not been built from them yet.
      */
     @Transient
-    val inhibitoryMask: Matrix
+    private var pendingSourceActivations: DoubleArray? = null
 
     @UserParameter(label = "Transpose Graphics", order = 10)
     var transposeGraphics = false
@@ -115,14 +135,7 @@ class WeightMatrix(source: Layer, target: Layer) : Connector(source, target) {
 
         weightMatrix = Matrix(target.size, source.size)
 
-        excitatoryMask = Matrix(target.size, source.size)
-        inhibitoryMask = Matrix(target.size, source.size)
-
         diagonalize()
-        updateMasks()
-
-        psrMatrix = Matrix(target.size, source.size)
-
     }
 
     @get:Producible
@@ -146,14 +159,12 @@ class WeightMatrix(source: Layer, target: Layer) : Connector(source, target) {
         for (i in 0 until len) {
             weightMatrix[i / weightMatrix.ncol(), i % weightMatrix.ncol()] = newWeights[i]
         }
-        updateMasks()
         events.updated.fire()
     }
 
     @Consumable
     fun setMatrixValues(otherWeightMatrix: Matrix?) {
         weightMatrix.copyFrom(otherWeightMatrix!!)
-        updateMasks()
         events.updated.fire()
     }
 
@@ -164,7 +175,6 @@ class WeightMatrix(source: Layer, target: Layer) : Connector(source, target) {
         clear()
         val diag = Matrix.eye(target.size, source.size)
         weightMatrix.copyFrom(diag)
-        updateMasks()
         events.updated.fire()
     }
 
@@ -173,46 +183,79 @@ class WeightMatrix(source: Layer, target: Layer) : Connector(source, target) {
         // TODO: Check for clamping and enabling
         if (learningRule !is StaticSynapseRule) {
             learningRule.apply(this, learningRuleData)
-            updateMasks()
             events.updated.fire()
         }
     }
 
     /**
-     * Update the psr matrix in the connectionist case.
+     * Update the post-synaptic responses.
+     *
+     * In the connectionist case the weighted inputs to the target are computed directly as a single matrix-vector
+     * product. The psr matrix (each row of the weight matrix multiplied element-wise by the source activations) is
+     * only built if [psrMatrix] is accessed, e.g. by a GUI node or a coupling.
      */
     context(Network)
     override fun updatePSR() {
         if (spikeResponder is NonResponder) {
-            // For "connectionist" case. One "half" of a matrix product.
-            // Populate each row of the psrMatrix with the element-wise product of the pre-synaptic output vector and
-            // that row of the matrix
-            if (source is ActivationSequenceProcessor) {
-                psrMatrix.copyFrom(weightMatrix.broadcastMultiply(source.activations.row(source.activations.nrow() - 1).toMatrix()))
+            val sourceActivations = if (source is ActivationSequenceProcessor) {
+                source.activations.row(source.activations.nrow() - 1)
             } else {
-                psrMatrix.copyFrom(weightMatrix.broadcastMultiply(source.activations))
+                source.activations.col(0)
             }
+            val weightedInputs = summedPSRs?.takeIf { it.size == weightMatrix.nrow() } ?: DoubleArray(weightMatrix.nrow())
+            weightMatrix.mv(Transpose.NO_TRANSPOSE, 1.0, sourceActivations, 0.0, weightedInputs)
+            summedPSRs = weightedInputs
+            pendingSourceActivations = sourceActivations
         } else {
+            summedPSRs = null
             spikeResponder.apply(this, spikeResponseData)
         }
     }
 
-    private fun updateExcitatoryMask() {
-        for (i in 0 until weightMatrix.nrow()) {
-            for (j in 0 until weightMatrix.ncol()) {
-                val newVal = if ((weightMatrix[i, j] > 0)) 1 else 0
-                excitatoryMask[i, j] = newVal.toDouble()
-            }
-        }
+    override fun getSummedPSRs(): DoubleArray {
+        return summedPSRs ?: psrMatrix.rowSums()
     }
 
-    private fun updateInhibitoryMask() {
-        for (i in 0 until weightMatrix.nrow()) {
+    /**
+     * Sum of post-synaptic responses through positive (excitatory) weights, for each target neuron.
+     */
+    val excitatoryInputs: DoubleArray
+        get() = signedInputs { it > 0 }
+
+    /**
+     * Sum of post-synaptic responses through negative (inhibitory) weights, for each target neuron.
+     */
+    val inhibitoryInputs: DoubleArray
+        get() = signedInputs { it < 0 }
+
+    /**
+     * Row sums of the psrs whose weights satisfy [include], read straight from the current weights. In the
+     * connectionist case the psrs are computed from the last source activations, so the psr matrix is not built.
+     */
+    private inline fun signedInputs(include: (Double) -> Boolean): DoubleArray {
+        val result = DoubleArray(weightMatrix.nrow())
+        val sourceActivations = pendingSourceActivations
+        if (sourceActivations != null) {
             for (j in 0 until weightMatrix.ncol()) {
-                val newVal = if ((weightMatrix[i, j] < 0)) 1 else 0
-                inhibitoryMask[i, j] = newVal.toDouble()
+                val activation = sourceActivations[j]
+                for (i in 0 until weightMatrix.nrow()) {
+                    val w = weightMatrix[i, j]
+                    if (include(w)) {
+                        result[i] += w * activation
+                    }
+                }
+            }
+        } else {
+            val psrs = psrMatrix
+            for (j in 0 until weightMatrix.ncol()) {
+                for (i in 0 until weightMatrix.nrow()) {
+                    if (include(weightMatrix[i, j])) {
+                        result[i] += psrs[i, j]
+                    }
+                }
             }
         }
+        return result
     }
 
     override fun randomize(randomizer: ProbabilityDistribution?) {
@@ -221,19 +264,16 @@ class WeightMatrix(source: Layer, target: Layer) : Connector(source, target) {
                 weightMatrix[i, j] = (randomizer ?: weightRandomizer).sampleDouble()
             }
         }
-        updateMasks()
         events.updated.fire()
     }
 
     override fun increment() {
         weightMatrix.add(increment)
-        updateMasks()
         events.updated.fire()
     }
 
     override fun decrement() {
         weightMatrix.sub(increment)
-        updateMasks()
         events.updated.fire()
     }
 
@@ -251,8 +291,4 @@ class WeightMatrix(source: Layer, target: Layer) : Connector(source, target) {
                 + "connecting " + source.id + " to " + target.id)
     }
 
-    fun updateMasks() {
-        updateExcitatoryMask()
-        updateInhibitoryMask()
-    }
 }
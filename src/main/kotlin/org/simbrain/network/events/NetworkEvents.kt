@@ -10,6 +10,10 @@ class NetworkEvents: Events() {
     val zoomToFitPage = NoArgEvent(interval = 20)
     val updated = NoArgEvent()
     val modelAdded = OneArgEvent<NetworkModel>()
+    /**
+     * Fired once by [org.simbrain.network.core.Network.batch] for all the models it adds, in updating order.
+     */
+    val modelsAdded = OneArgEvent<List<NetworkModel>>()
     val modelRemoved = OneArgEvent<NetworkModel>()
     val updateActionsChanged = NoArgEvent()
     val freeWeightVisibilityChanged = OneArgEvent<Boolean>()
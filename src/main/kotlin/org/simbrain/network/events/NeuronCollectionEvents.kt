@@ -1,5 +1,6 @@
 package org.simbrain.network.events
 
+import org.simbrain.network.core.Neuron
 import org.simbrain.util.Events
 
 /**
@@ -8,5 +9,7 @@ import org.simbrain.util.Events
 class NeuronCollectionEvents: LocationEvents() {
     val customInfoUpdated = NoArgEvent()
     val fanInUpdated = NoArgEvent()
+    val neuronAdded = OneArgEvent<Neuron>()
+    val neuronRemoved = OneArgEvent<Neuron>()
     val shouldUpdateOutline = NoArgEvent(interval = 10, timingMode = TimingMode.Throttle)
 }
\ No newline at end of file
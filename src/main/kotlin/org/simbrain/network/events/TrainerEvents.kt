@@ -1,5 +1,6 @@
 package org.simbrain.network.events
 
+import org.simbrain.network.trainers.ErrorReport
 import org.simbrain.util.Events
 
 /**
@@ -9,6 +10,7 @@ class TrainerEvents: Events() {
     val beginTraining = NoArgEvent()
     val endTraining = NoArgEvent()
     val errorUpdated = OneArgEvent<Double>()
+    val errorReported = OneArgEvent<ErrorReport>()
     val progressUpdated = OneArgEvent<Pair<String, Int>>()
     val iterationReset = NoArgEvent()
 }
\ No newline at end of file
@@ -0,0 +1,75 @@
+package org.simbrain.network.gui
+
+import org.simbrain.network.gui.dialogs.NetworkPreferences
+import java.util.concurrent.ConcurrentHashMap
+import javax.swing.Timer
+
+/**
+ * Collects GUI refreshes requested by model events and runs each at most once per display frame.
+ *
+ * Model threads call [markDirty], which only records the refresh and returns at once, so a running simulation never
+ * waits on the Swing thread. A Swing timer running at [framesPerSecond] then runs the recorded refreshes on the event
+ * dispatch thread. A refresh requested many times within one frame, e.g. a neuron whose activation changes on every
+ * update, runs once, and reads the model state as of that frame.
+ *
+ * Refreshes are identified by the function object itself, so nodes should hold each refresh in a property and pass
+ * the same instance every time:
+ * ```
+ * private val refreshActivation = { updateColor(); updateText() }
+ * ...
+ * events.activationChanged.on(Dispatchers.Unconfined) { _, _ -> networkPanel.frameCoalescer.markDirty(refreshActivation) }
+ * ```
+ * Registering with [kotlinx.coroutines.Dispatchers.Unconfined] lets the event call [markDirty] on the firing thread
+ * without launching a coroutine (see [org.simbrain.util.Events]).
+ */
+class FrameCoalescer(framesPerSecond: Int = NetworkPreferences.guiFrameRate) {
+
+    private val dirty = ConcurrentHashMap.newKeySet<() -> Unit>()
+
+    private val timer = Timer(frameDelay(framesPerSecond)) { flush() }.apply {
+        isCoalesce = true
+    }
+
+    /**
+     * Maximum number of times per second that pending refreshes are run.
+     */
+    var framesPerSecond: Int = framesPerSecond
+        set(value) {
+            field = value
+            timer.delay = frameDelay(value)
+        }
+
+    private fun frameDelay(framesPerSecond: Int) = 1000 / framesPerSecond.coerceIn(1, 1000)
+
+    /**
+     * Request that [refresh] be run on the Swing thread in the next frame. Safe to call from any thread.
+     */
+    fun markDirty(refresh: () -> Unit) {
+        dirty.add(refresh)
+    }
+
+    /**
+     * Number of refreshes waiting for the next frame.
+     */
+    val pendingCount get() = dirty.size
+
+    /**
+     * Run all pending refreshes. Called by the timer on the Swing thread.
+     */
+    fun flush() {
+        for (refresh in dirty) {
+            // Removing before running means a refresh marked again while it runs is not lost
+            if (dirty.remove(refresh)) {
+                refresh()
+            }
+        }
+    }
+
+    fun start() {
+        timer.start()
+    }
+
+    fun stop() {
+        timer.stop()
+    }
+}
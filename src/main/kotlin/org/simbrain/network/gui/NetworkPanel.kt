@@ -78,6 +78,16 @@ class NetworkPanel constructor(val networkComponent: NetworkComponent) : JPanel(
 
     val timeLabel = TimeLabel(this).apply { update() }
 
+    /**
+     * Runs the GUI refreshes requested by model updates at most once per frame.
+     */
+    val frameCoalescer = FrameCoalescer()
+
+    private val refreshPanel: () -> Unit = {
+        repaint()
+        timeLabel.update()
+    }
+
     var autoZoom = true
         set(value) {
             field = value
@@ -162,6 +172,7 @@ class NetworkPanel constructor(val networkComponent: NetworkComponent) : JPanel(
 
         canvas.background = NetworkPreferences.backgroundColor
         nudgeAmount = NetworkPreferences.nudgeAmount
+        frameCoalescer.framesPerSecond = NetworkPreferences.guiFrameRate
         editMode.resetWandCursor()
 
         NeuronNode.hotColor = NetworkPreferences.hotNodeColor
@@ -227,6 +238,16 @@ class NetworkPanel constructor(val networkComponent: NetworkComponent) : JPanel(
         initEventHandlers()
     }
 
+    override fun addNotify() {
+        super.addNotify()
+        frameCoalescer.start()
+    }
+
+    override fun removeNotify() {
+        frameCoalescer.stop()
+        super.removeNotify()
+    }
+
     /**
      * Returns all nodes in the canvas.
      */
@@ -701,6 +722,9 @@ class NetworkPanel constructor(val networkComponent: NetworkComponent) : JPanel(
             modelAdded.on(Dispatchers.Swing, wait = true) {
                 createNode(it)
             }
+            modelsAdded.on(Dispatchers.Swing, wait = true) { models ->
+                models.forEach { createNode(it) }
+            }
             modelRemoved.on {
                 zoomToFitPage.fire()
             }
@@ -713,10 +737,7 @@ class NetworkPanel constructor(val networkComponent: NetworkComponent) : JPanel(
                 modelsUniq.forEach { modelNodeMap.remove(it) }
             }
             updateActionsChanged.on(Dispatchers.Swing) { timeLabel.update() }
-            updated.on(Dispatchers.Swing, wait = true) {
-                repaint()
-                timeLabel.update()
-            }
+            updated.on(Dispatchers.Unconfined) { frameCoalescer.markDirty(refreshPanel) }
             zoomToFitPage.on(Dispatchers.Swing) {
                 if (autoZoom) {
                     val filtered = screenElements.unionOfGlobalFullBounds()
@@ -56,6 +56,15 @@ object NetworkPreferences: PreferenceHolder() {
     @UserParameter(label = "Wand radius", tab = "GUI")
     var wandRadius by IntegerPreference(40)
 
+    @UserParameter(
+        label = "Frame rate",
+        description = "Maximum number of times per second that nodes are redrawn while a simulation runs.",
+        minimumValue = 1.0,
+        maximumValue = 240.0,
+        tab = "GUI"
+    )
+    var guiFrameRate by IntegerPreference(30)
+
     @UserParameter(
         label = "Matrix image max width/height",
         description = "Maximum size of the weight matrix image in pixels in either dimension (i.e. width or height).",
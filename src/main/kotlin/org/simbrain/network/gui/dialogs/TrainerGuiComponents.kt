@@ -57,6 +57,7 @@ class TrainerControls<SN>(trainer: SupervisedTrainer<SN>, supervisedNetwork: SN,
     ) {
         trainer.events.beginTraining.fire().await()
         with(networkPanel.network) { supervisedNetwork.run { trainer.trainOnce() } }
+        trainer.reportErrors()
         trainer.events.endTraining.fire()
     }
 
@@ -166,8 +167,8 @@ class ErrorTimeSeries(trainer: SupervisedTrainer<*>) : JPanel() {
         add(mainPanel)
 
         model.addTimeSeries("Error")
-        trainer.events.errorUpdated.on(Dispatchers.Swing) {
-            model.addData(0, trainer.iteration.toDouble(), it)
+        trainer.events.errorReported.on(Dispatchers.Swing) {
+            model.addData(0, it.lastIteration.toDouble(), trainer.errorReporting.valueOf(it))
         }
         trainer.events.iterationReset.on(Dispatchers.Swing, wait = true) {
             model.clearData()
@@ -165,6 +165,14 @@ class NeuronArrayNode(networkPanel: NetworkPanel, val neuronArray: NeuronArray)
         mainNode.addChild(this)
     }
 
+    /**
+     * Refresh run by [org.simbrain.network.gui.FrameCoalescer] when the array is updated.
+     */
+    private val refreshGraphics: () -> Unit = {
+        updateActivationImage()
+        updateInfoText()
+    }
+
     /**
      * Create a new neuron array node.
      *
@@ -192,8 +200,8 @@ class NeuronArrayNode(networkPanel: NetworkPanel, val neuronArray: NeuronArray)
         events.labelChanged.on(Dispatchers.Swing) { o, n -> updateTextLabel() }
         updateTextLabel()
 
-        events.updated.on {
-            events.updateGraphics.fire()
+        events.updated.on(Dispatchers.Unconfined) {
+            networkPanel.frameCoalescer.markDirty(refreshGraphics)
         }
 
         events.updateGraphics.on(Dispatchers.Swing) {
@@ -98,6 +98,16 @@ class NeuronNode(net: NetworkPanel, val neuron: Neuron) : ScreenElement(net) {
      */
     private var customStrokeColor = false
 
+    /**
+     * Refreshes run by [org.simbrain.network.gui.FrameCoalescer] when the neuron's activation changes or it spikes.
+     */
+    private val refreshActivation: () -> Unit = {
+        updateColor()
+        updateText()
+    }
+
+    private val refreshSpike: () -> Unit = { updateSpikeColor() }
+
     /**
      * Create a new neuron node.
      */
@@ -122,11 +132,10 @@ class NeuronNode(net: NetworkPanel, val neuron: Neuron) : ScreenElement(net) {
 
         // Handle events
         val events = neuron.events
-        events.activationChanged.on(Dispatchers.Swing) { _, _ ->
-            updateColor()
-            updateText()
+        events.activationChanged.on(Dispatchers.Unconfined) { _, _ ->
+            networkPanel.frameCoalescer.markDirty(refreshActivation)
         }
-        events.spiked.on(Dispatchers.Swing) { updateSpikeColor() }
+        events.spiked.on(Dispatchers.Unconfined) { networkPanel.frameCoalescer.markDirty(refreshSpike) }
         events.colorChanged.on(Dispatchers.Swing) { updateColor() }
         events.labelChanged.on(Dispatchers.Swing) { _, _ ->
             updateTextLabel()
@@ -116,6 +116,16 @@ class SynapseNode(
      * @param target The target to set.
      */
 
+    /**
+     * Refreshes run by [org.simbrain.network.gui.FrameCoalescer] when the strength changes or the source spikes.
+     */
+    private val refreshStrength: () -> Unit = {
+        updateColor()
+        updateDiameter()
+    }
+
+    private val refreshSpike: () -> Unit = { updateSpikeColor() }
+
     /**
      * Create a new synapse node connecting a source and target neuron.
      *
@@ -141,9 +151,8 @@ class SynapseNode(
 
         val events = synapse.events
 
-        events.strengthUpdated.on(dispatcher = Dispatchers.Swing) {
-            updateColor()
-            updateDiameter()
+        events.strengthUpdated.on(dispatcher = Dispatchers.Unconfined) {
+            networkPanel.frameCoalescer.markDirty(refreshStrength)
         }
         events.colorPreferencesChanged.on(dispatcher = Dispatchers.Swing) {
             updateColor()
@@ -158,7 +167,9 @@ class SynapseNode(
         events.locationChanged.on(dispatcher = Dispatchers.Swing) { this.updatePosition() }
 
         // Respond to spiking events
-        source.neuron.events.spiked.on(dispatcher = Dispatchers.Swing) { updateSpikeColor() }
+        source.neuron.events.spiked.on(dispatcher = Dispatchers.Unconfined) {
+            networkPanel.frameCoalescer.markDirty(refreshSpike)
+        }
     }
 
     /**
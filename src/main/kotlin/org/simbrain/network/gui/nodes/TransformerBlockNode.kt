@@ -319,6 +319,7 @@ class TransformerBlockNode(networkPanel: NetworkPanel, val transformerBlock: Tra
                     }
                     dialog.addCommitTask {
                         with(networkPanel.network) {
+                            transformerBlock.clearCache()
                             transformerBlock.update()
                         }
                     }
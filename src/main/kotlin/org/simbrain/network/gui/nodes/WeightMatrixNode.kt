@@ -5,6 +5,7 @@ import kotlinx.coroutines.swing.Swing
 import org.piccolo2d.util.PPaintContext
 import org.simbrain.network.core.AbstractNeuronCollection
 import org.simbrain.network.core.Connector
+import org.simbrain.network.core.SparseWeightMatrix
 import org.simbrain.network.core.WeightMatrix
 import org.simbrain.network.gui.ImageBox
 import org.simbrain.network.gui.NetworkPanel
@@ -53,11 +54,16 @@ class WeightMatrixNode(networkPanel: NetworkPanel, val weightMatrix: Connector)
 
     private val interactionBox = WeightMatrixInteractionBox()
 
+    /**
+     * Refresh run by [org.simbrain.network.gui.FrameCoalescer] when the matrix is updated.
+     */
+    private val refreshGraphics: () -> Unit = { renderMatrixToImage() }
+
     init {
         updateShowWeights()
         pickable = true
         val events = weightMatrix.events
-        events.updated.on { events.updateGraphics.fire() }
+        events.updated.on(Dispatchers.Unconfined) { networkPanel.frameCoalescer.markDirty(refreshGraphics) }
         events.updateGraphics.on(Dispatchers.Swing) { renderMatrixToImage() }
         events.labelChanged.on(Dispatchers.Swing) { _, newLabel -> interactionBox.setText(newLabel) }
         weightMatrix.source.events.locationChanged.on(Dispatchers.Swing) {
@@ -89,8 +95,11 @@ class WeightMatrixNode(networkPanel: NetworkPanel, val weightMatrix: Connector)
      * be scaled down to 1000x1000 using nearest neighbor interpolation.
      */
     private fun renderMatrixToImage() {
-        val weightMatrix = weightMatrix as WeightMatrix
-        val matrix = weightMatrix.weightMatrix
+        val matrix = when (val connector = weightMatrix) {
+            is WeightMatrix -> connector.weightMatrix
+            is SparseWeightMatrix -> connector.toDenseMatrix()
+            else -> return
+        }
         val screenScalingFactor = getScreenScalingFactor()
         networkPanelScalingFactor = networkPanel.scalingFactor
         val scale = networkPanel.scalingFactor * screenScalingFactor
@@ -98,7 +107,8 @@ class WeightMatrixNode(networkPanel: NetworkPanel, val weightMatrix: Connector)
         // Create the image data from the weight matrix using nearest neighbor interpolation
         val imageData = matrix.toScaledImageData(imageWidth, imageHeight, scale)
 
-        val img = imageData.toSimbrainColorImage().let { if (weightMatrix.transposeGraphics) it.transposed() else it }
+        val transpose = (weightMatrix as? WeightMatrix)?.transposeGraphics ?: false
+        val img = imageData.toSimbrainColorImage().let { if (transpose) it.transposed() else it }
         imageBox.image = img
     }
 
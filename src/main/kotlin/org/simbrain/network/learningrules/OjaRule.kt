@@ -73,6 +73,10 @@ class OjaRule : SynapseUpdateRule<EmptyScalarData, EmptyMatrixData>() {
             val hebbTerm = output.mt(input)
             val weightDecayTerm = wm.broadcastMultiply(input)
             wm.add(hebbTerm.sub(weightDecayTerm).mul(learningRate))
+        } else if (connector is SparseWeightMatrix) {
+            val input = connector.source.activationArray
+            val output = connector.target.activationArray
+            connector.updateEntries { i, j, w -> w + learningRate * (output[i] * input[j] - w * input[j]) }
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,332 @@
+package org.simbrain.network.trainers
+
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import org.simbrain.network.core.NeuronArray
+import org.simbrain.network.core.WeightMatrix
+import org.simbrain.network.spikeresponders.NonResponder
+import org.simbrain.network.updaterules.LinearRule
+import org.simbrain.network.updaterules.SigmoidalRule
+import org.simbrain.network.updaterules.SoftmaxRule
+import org.simbrain.network.updaterules.interfaces.DifferentiableUpdateRule
+import smile.math.blas.Transpose
+import smile.math.matrix.Matrix
+import kotlin.math.exp
+
+/**
+ * Trains a chain of weight matrices on a mini-batch of rows at once.
+ *
+ * [accumulateBackprop] pushes one row at a time through the neuron arrays of the network. Here, the rows of a batch are
+ * stacked as the columns of a matrix instead, so each layer's forward pass, error backpropagation and weight deltas are
+ * single matrix-matrix products. Results go into matrices that are allocated once per batch size and then reused. The
+ * weight and bias deltas are summed over the batch and applied at the end, as in [accumulateBackprop]. The network's
+ * neuron arrays are updated once per batch, showing the last row of the batch, and events are only fired then.
+ *
+ * With more than one shard, each batch is split into [shards] contiguous parts that are trained in parallel. Each
+ * shard has its own activations and deltas, which are summed in shard order before being applied, so results depend
+ * on the number of shards but not on the number of cores or on thread scheduling.
+ *
+ * Only chains that give the same results as the row-by-row update can be trained this way; see [canTrain].
+ */
+class BatchedBackprop @JvmOverloads constructor(val weightMatrices: List<WeightMatrix>, val shards: Int = 1) {
+
+    init {
+        require(shards > 0) { "Shard count must be positive, but was $shards" }
+    }
+
+    private val layers: List<NeuronArray> = listOf(weightMatrices.first().src) + weightMatrices.map { it.tar }
+
+    /**
+     * Activations, errors and deltas for one part of a batch.
+     */
+    private inner class Shard {
+
+        var batchSize = 0
+
+        /**
+         * Activations of each layer, with one column per row of the batch.
+         */
+        var activations = listOf<Matrix>()
+
+        /**
+         * Net inputs of the target layer of each weight matrix.
+         */
+        var netInputs = listOf<Matrix>()
+
+        /**
+         * Errors of each layer. Those of the input layer are not computed.
+         */
+        var errors = listOf<Matrix>()
+
+        var targets = Matrix(0, 0)
+
+        val weightDeltas = weightMatrices.map { Matrix(it.weightMatrix.nrow(), it.weightMatrix.ncol()) }
+
+        val biasDeltas = weightMatrices.map { Matrix(it.tar.size, 1) }
+
+        val actualColumn = Matrix(layers.last().size, 1)
+
+        val targetColumn = Matrix(layers.last().size, 1)
+
+        /**
+         * Time and memory used by the last call to [computeDeltas], for [TrainerMetrics].
+         */
+        var forwardNanos = 0L
+        var backwardNanos = 0L
+        var allocatedBytes = 0L
+
+        /**
+         * Compute the deltas for [rows] of [dataset] and return their total loss.
+         */
+        fun computeDeltas(dataset: MatrixDataset, rows: IntRange, lossFunction: BackpropLossFunction): Double {
+            val allocationStart = TrainerMetrics.currentThreadAllocatedBytes()
+            val start = System.nanoTime()
+            allocate(rows.count())
+            val input = activations.first()
+            rows.forEachIndexed { column, row ->
+                for (i in 0 until input.nrow()) {
+                    input[i, column] = dataset.inputs[row, i]
+                }
+                for (i in 0 until targets.nrow()) {
+                    targets[i, column] = dataset.targets[row, i]
+                }
+            }
+            forwardPass()
+            val forwardEnd = System.nanoTime()
+            val loss = computeOutputErrors(lossFunction)
+            backpropagate()
+            backwardNanos = System.nanoTime() - forwardEnd
+            forwardNanos = forwardEnd - start
+            allocatedBytes = TrainerMetrics.currentThreadAllocatedBytes() - allocationStart
+            return loss
+        }
+
+        private fun allocate(size: Int) {
+            if (size == batchSize) {
+                return
+            }
+            batchSize = size
+            activations = layers.map { Matrix(it.size, size) }
+            netInputs = weightMatrices.map { Matrix(it.tar.size, size) }
+            errors = layers.map { Matrix(it.size, size) }
+            targets = Matrix(layers.last().size, size)
+        }
+
+        private fun forwardPass() {
+            weightMatrices.forEachIndexed { index, wm ->
+                val netInput = netInputs[index]
+                netInput.mm(Transpose.NO_TRANSPOSE, wm.weightMatrix, Transpose.NO_TRANSPOSE, activations[index], 1.0, 0.0)
+                val biases = wm.tar.biases
+                for (column in 0 until batchSize) {
+                    for (i in 0 until netInput.nrow()) {
+                        netInput[i, column] += biases[i, 0]
+                    }
+                }
+                activate(wm.tar, netInput, activations[index + 1])
+            }
+        }
+
+        /**
+         * Compute the output layer errors and return the total loss.
+         */
+        private fun computeOutputErrors(lossFunction: BackpropLossFunction): Double {
+            val actual = activations.last()
+            val outputErrors = errors.last()
+            var loss = 0.0
+            for (j in 0 until batchSize) {
+                for (i in 0 until actual.nrow()) {
+                    actualColumn[i, 0] = actual[i, j]
+                    targetColumn[i, 0] = targets[i, j]
+                }
+                loss += lossFunction.scalarLoss(actualColumn, targetColumn)
+                val columnError = lossFunction.outputError(actualColumn, targetColumn)
+                for (i in 0 until actual.nrow()) {
+                    outputErrors[i, j] = columnError[i, 0]
+                }
+            }
+            return loss
+        }
+
+        private fun backpropagate() {
+            for (index in weightMatrices.indices.reversed()) {
+                val wm = weightMatrices[index]
+                val layerErrors = errors[index + 1]
+                (wm.tar.updateRule as? DifferentiableUpdateRule)?.let { rule ->
+                    val netInput = netInputs[index]
+                    forEachElement(layerErrors) { i, j ->
+                        layerErrors[i, j] *= rule.getDerivative(netInput[i, j])
+                    }
+                }
+                val biasDelta = biasDeltas[index]
+                for (i in 0 until layerErrors.nrow()) {
+                    var sum = 0.0
+                    for (j in 0 until batchSize) {
+                        sum += layerErrors[i, j]
+                    }
+                    biasDelta[i, 0] = sum
+                }
+                weightDeltas[index].mm(Transpose.NO_TRANSPOSE, layerErrors, Transpose.TRANSPOSE, activations[index], 1.0, 0.0)
+                if (index > 0) {
+                    errors[index].mm(Transpose.TRANSPOSE, wm.weightMatrix, Transpose.NO_TRANSPOSE, layerErrors, 1.0, 0.0)
+                }
+            }
+        }
+    }
+
+    private val shardList = List(shards) { Shard() }
+
+    /**
+     * Train on the rows of [dataset] in [rows] and return the mean error of the batch. Time spent in the forward and
+     * backward passes is added to [metrics] if given.
+     */
+    suspend fun trainBatch(
+        dataset: MatrixDataset,
+        rows: IntRange,
+        learningRate: Double,
+        lossFunction: BackpropLossFunction,
+        metrics: TrainerMetrics? = null
+    ): Double {
+        require(dataset.inputs.ncol() == layers.first().size) {
+            "Dataset has ${dataset.inputs.ncol()} inputs but the input layer has ${layers.first().size} neurons"
+        }
+        require(dataset.targets.ncol() == layers.last().size) {
+            "Dataset has ${dataset.targets.ncol()} targets but the output layer has ${layers.last().size} neurons"
+        }
+        lossFunction.validateLayer(layers.last())
+
+        val parts = split(rows)
+        val used = shardList.take(parts.size)
+        val losses = if (parts.size == 1) {
+            listOf(used.first().computeDeltas(dataset, parts.first(), lossFunction))
+        } else {
+            coroutineScope {
+                used.zip(parts).map { (shard, part) ->
+                    async(Dispatchers.Default) { shard.computeDeltas(dataset, part, lossFunction) }
+                }.awaitAll()
+            }
+        }
+
+        if (metrics != null) {
+            used.forEach { shard ->
+                metrics.addForwardNanos(shard.forwardNanos)
+                metrics.addBackwardNanos(shard.backwardNanos)
+                // Shards on the calling thread are already counted by the trainer
+                if (parts.size > 1) {
+                    metrics.addAllocatedBytes(shard.allocatedBytes)
+                }
+            }
+        }
+
+        // Sum the deltas in shard order into the first shard's deltas
+        val first = used.first()
+        used.drop(1).forEach { shard ->
+            weightMatrices.indices.forEach { index ->
+                first.weightDeltas[index].add(shard.weightDeltas[index])
+                first.biasDeltas[index].add(shard.biasDeltas[index])
+            }
+        }
+        weightMatrices.forEachIndexed { index, wm ->
+            wm.weightMatrix.add(first.weightDeltas[index].mul(learningRate))
+            wm.tar.biases.add(first.biasDeltas[index].mul(learningRate))
+        }
+        updateNetwork(used.last())
+        return losses.sum() / rows.count()
+    }
+
+    /**
+     * Split [rows] into at most [shards] contiguous, non-empty parts of nearly equal size.
+     */
+    private fun split(rows: IntRange): List<IntRange> {
+        val count = rows.count()
+        val parts = shards.coerceIn(1, count.coerceAtLeast(1))
+        return (0 until parts).map { part ->
+            val start = rows.first + count * part / parts
+            val end = rows.first + count * (part + 1) / parts
+            start until end
+        }
+    }
+
+    /**
+     * Apply the update rule of [layer] to each column of [netInput]. Matches the rules' [NeuronArray] updates.
+     */
+    private fun activate(layer: NeuronArray, netInput: Matrix, output: Matrix) {
+        when (val rule = layer.updateRule) {
+            is LinearRule -> forEachElement(netInput) { i, j ->
+                output[i, j] = rule.linearRule(netInput[i, j])
+            }
+            is SigmoidalRule -> forEachElement(netInput) { i, j ->
+                output[i, j] = rule.type.valueOf(netInput[i, j], rule.lowerBound, rule.upperBound, rule.slope)
+            }
+            is SoftmaxRule -> {
+                // SoftmaxRule adds the biases to the inputs, which already include them
+                val biases = layer.biases
+                for (j in 0 until netInput.ncol()) {
+                    var total = 0.0
+                    for (i in 0 until netInput.nrow()) {
+                        output[i, j] = exp((netInput[i, j] + biases[i, 0]) / rule.temperature)
+                        total += output[i, j]
+                    }
+                    for (i in 0 until netInput.nrow()) {
+                        output[i, j] /= total
+                    }
+                }
+            }
+            else -> throw IllegalStateException("Update rule ${rule.name} cannot be used in batched training")
+        }
+    }
+
+    /**
+     * Show the last row of the batch, which is in [shard], in the network.
+     */
+    private fun updateNetwork(shard: Shard) {
+        val last = shard.batchSize - 1
+        layers.forEachIndexed { index, layer ->
+            layer.setActivations(shard.activations[index].col(last))
+            if (index > 0) {
+                val netInput = shard.netInputs[index - 1]
+                for (i in 0 until layer.size) {
+                    layer.inputs[i, 0] = netInput[i, last]
+                }
+            }
+            layer.events.updated.fire()
+        }
+        weightMatrices.forEach { it.events.updated.fire() }
+    }
+
+    private inline fun forEachElement(matrix: Matrix, action: (Int, Int) -> Unit) {
+        for (j in 0 until matrix.ncol()) {
+            for (i in 0 until matrix.nrow()) {
+                action(i, j)
+            }
+        }
+    }
+
+    companion object {
+
+        /**
+         * Whether [weightMatrices] is a chain of connectionist weight matrices between neuron arrays that can be
+         * trained in batches. Each layer after the first must receive input only from the previous weight matrix and
+         * use a linear, sigmoidal or softmax rule without noise.
+         */
+        fun canTrain(weightMatrices: List<WeightMatrix>): Boolean {
+            if (weightMatrices.isEmpty()) {
+                return false
+            }
+            return weightMatrices.withIndex().all { (index, wm) ->
+                val target = wm.target as? NeuronArray ?: return false
+                wm.source is NeuronArray &&
+                        wm.spikeResponder is NonResponder &&
+                        (index == 0 || weightMatrices[index - 1].target === wm.source) &&
+                        target.incomingConnectors.singleOrNull() === wm &&
+                        when (val rule = target.updateRule) {
+                            is LinearRule -> !rule.addNoise
+                            is SigmoidalRule -> !rule.addNoise
+                            is SoftmaxRule -> true
+                            else -> false
+                        }
+            }
+        }
+    }
+}
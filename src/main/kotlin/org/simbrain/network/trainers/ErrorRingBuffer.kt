@@ -0,0 +1,127 @@
+package org.simbrain.network.trainers
+
+import java.lang.invoke.VarHandle
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.math.max
+import kotlin.math.min
+
+/**
+ * Summary of the errors recorded between two reports of a trainer.
+ *
+ * @param firstIteration iteration of the first error in the report
+ * @param lastIteration iteration of the last error in the report
+ * @param count number of errors summarized
+ */
+data class ErrorReport(
+    val firstIteration: Int,
+    val lastIteration: Int,
+    val count: Int,
+    val min: Double,
+    val mean: Double,
+    val max: Double,
+    val last: Double
+) {
+    companion object {
+        fun of(iteration: Int, error: Double) = ErrorReport(iteration, iteration, 1, error, error, error, error)
+    }
+}
+
+/**
+ * Lock-free ring buffer of the errors of training iterations, written by the training thread and read by one reporting
+ * thread. The writer never waits: when the buffer is full the oldest errors are overwritten, and [drain] skips any
+ * error that was overwritten while it was being read.
+ */
+class ErrorRingBuffer(val capacity: Int = 4096) {
+
+    init {
+        require(capacity > 0) { "Capacity must be positive, but was $capacity" }
+    }
+
+    private val iterations = IntArray(capacity)
+
+    private val errors = DoubleArray(capacity)
+
+    /**
+     * Number of errors the writer has started to write. Raised before a slot is overwritten.
+     */
+    private val claimed = AtomicLong()
+
+    /**
+     * Number of errors completely written.
+     */
+    private val written = AtomicLong()
+
+    /**
+     * Number of errors already drained. Only used by the reader.
+     */
+    private var read = 0L
+
+    private val iterationCopy = IntArray(capacity)
+
+    private val errorCopy = DoubleArray(capacity)
+
+    /**
+     * Add the error of an iteration. Must only be called by one thread at a time.
+     */
+    fun add(iteration: Int, error: Double) {
+        val index = written.get()
+        claimed.set(index + 1)
+        // Keep the writes to the slot from moving before the claim, which is only a release
+        VarHandle.storeStoreFence()
+        val slot = (index % capacity).toInt()
+        iterations[slot] = iteration
+        errors[slot] = error
+        written.set(index + 1)
+    }
+
+    /**
+     * Summarize the errors added since the last call, or return null if there are none. Only the most recent
+     * [capacity] errors are kept, so older ones that were not drained in time are not included. Must only be called by
+     * one thread at a time.
+     */
+    fun drain(): ErrorReport? {
+        val end = written.get()
+        val start = max(read, end - capacity)
+        for (index in start until end) {
+            val slot = (index % capacity).toInt()
+            iterationCopy[slot] = iterations[slot]
+            errorCopy[slot] = errors[slot]
+        }
+        read = end
+        // Errors the writer may have overwritten while they were copied. The fence keeps the copies from moving after
+        // the read of claimed, which is only an acquire.
+        VarHandle.loadLoadFence()
+        val first = max(start, claimed.get() - capacity)
+        if (first >= end) {
+            return null
+        }
+
+        var minimum = Double.POSITIVE_INFINITY
+        var maximum = Double.NEGATIVE_INFINITY
+        var sum = 0.0
+        for (index in first until end) {
+            val error = errorCopy[(index % capacity).toInt()]
+            minimum = min(minimum, error)
+            maximum = max(maximum, error)
+            sum += error
+        }
+        val count = (end - first).toInt()
+        val lastSlot = ((end - 1) % capacity).toInt()
+        return ErrorReport(
+            firstIteration = iterationCopy[(first % capacity).toInt()],
+            lastIteration = iterationCopy[lastSlot],
+            count = count,
+            min = minimum,
+            mean = sum / count,
+            max = maximum,
+            last = errorCopy[lastSlot]
+        )
+    }
+
+    /**
+     * Discard all errors. Must not be called while errors are being added or drained.
+     */
+    fun clear() {
+        read = written.get()
+    }
+}
@@ -13,7 +13,12 @@
  */
 package org.simbrain.network.trainers
 
+import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.cancelAndJoin
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
 import org.simbrain.network.core.Network
 import org.simbrain.network.core.NeuronArray
@@ -54,6 +59,11 @@ abstract class SupervisedTrainer<SN: SupervisedNetwork> : EditableObject {
         order = 5
     )
 
+    var errorReporting by GuiEditable(
+        initValue = ErrorReporting(),
+        order = 6
+    )
+
     var iteration = 0
 
     /**
@@ -67,6 +77,21 @@ abstract class SupervisedTrainer<SN: SupervisedNetwork> : EditableObject {
 
     @Transient val events = TrainerEvents()
 
+    /**
+     * Chooses rows for stochastic and batch updates. Set to a seeded [Random] for reproducible training.
+     */
+    @Transient var random: Random = Random.Default
+
+    /**
+     * Throughput and cost of training so far.
+     */
+    @Transient val metrics = TrainerMetrics()
+
+    /**
+     * Errors waiting to be reported when [errorReporting] does not block.
+     */
+    @Transient private val errorBuffer = ErrorRingBuffer()
+
     context(Network)
     suspend fun SN.startTraining() {
         if (stoppingConditionReached) {
@@ -77,11 +102,13 @@ abstract class SupervisedTrainer<SN: SupervisedNetwork> : EditableObject {
         isRunning = true
         events.beginTraining.fire().await()
         withContext(Dispatchers.Default) {
-            while (isRunning) {
-                trainOnce()
-                if (stoppingCondition.validate(iteration, lastError)) {
-                    stoppingConditionReached = true
-                    stopTraining()
+            withErrorReporting {
+                while (isRunning) {
+                    trainOnce()
+                    if (stoppingCondition.validate(iteration, lastError)) {
+                        stoppingConditionReached = true
+                        stopTraining()
+                    }
                 }
             }
         }
@@ -94,26 +121,75 @@ abstract class SupervisedTrainer<SN: SupervisedNetwork> : EditableObject {
 
     context(Network)
     suspend fun SN.train(iterations: Int) {
-        repeat(iterations) {
-            trainOnce()
+        withErrorReporting {
+            repeat(iterations) {
+                trainOnce()
+            }
         }
     }
 
     context(Network, SN)
     suspend fun trainOnce() {
         iteration++
-        with(updateType) {
-            lastError = when (this) {
-                is UpdateMethod.Stochastic -> trainRow(Random.nextInt(trainingSet.inputs.nrow()))
-                is UpdateMethod.Epoch -> trainBatch(0 until trainingSet.size)
+        metrics.beginIteration()
+        val rowCount = with(updateType) {
+            when (this) {
+                is UpdateMethod.Stochastic -> {
+                    lastError = trainRow(random.nextInt(trainingSet.inputs.nrow()))
+                    1
+                }
+                is UpdateMethod.Epoch -> {
+                    lastError = trainBatch(0 until trainingSet.size)
+                    trainingSet.size
+                }
                 is UpdateMethod.Batch -> {
-                    val startIndex = Random.nextInt(0, trainingSet.size - batchSize + 1)
+                    val startIndex = random.nextInt(0, trainingSet.size - batchSize + 1)
                     val endIndex = startIndex + batchSize
-                    trainBatch(startIndex until  endIndex)
+                    lastError = trainBatch(startIndex until  endIndex)
+                    batchSize
                 }
             }
         }
-        events.errorUpdated.fire(lastError).await()
+        metrics.endIteration(rowCount)
+        if (iteration % errorReporting.interval.coerceAtLeast(1) != 0) {
+            return
+        }
+        if (errorReporting.mode == ErrorReporting.Mode.EveryIteration) {
+            val eventStart = System.nanoTime()
+            events.errorReported.fire(ErrorReport.of(iteration, lastError)).await()
+            events.errorUpdated.fire(lastError).await()
+            metrics.addEventNanos(System.nanoTime() - eventStart)
+        } else {
+            errorBuffer.add(iteration, lastError)
+        }
+    }
+
+    /**
+     * Run [block] while reporting buffered errors at most [ErrorReporting.maxReportsPerSecond] times a second, then
+     * report the remaining errors.
+     */
+    private suspend fun withErrorReporting(block: suspend CoroutineScope.() -> Unit) = coroutineScope {
+        val reporter = if (errorReporting.mode != ErrorReporting.Mode.EveryIteration) {
+            launch {
+                while (true) {
+                    delay(1000L / errorReporting.maxReportsPerSecond.coerceAtLeast(1))
+                    reportErrors()
+                }
+            }
+        } else null
+        block()
+        reporter?.cancelAndJoin()
+        reportErrors()
+    }
+
+    /**
+     * Notify listeners of the errors recorded since the last report. Training calls this itself, but a single
+     * [trainOnce] does not, so call this afterwards to show its error.
+     */
+    suspend fun reportErrors() {
+        val report = errorBuffer.drain() ?: return
+        events.errorReported.fire(report).await()
+        events.errorUpdated.fire(errorReporting.valueOf(report)).await()
     }
 
     context(Network)
@@ -123,7 +199,7 @@ abstract class SupervisedTrainer<SN: SupervisedNetwork> : EditableObject {
      * @return the mean error for the batch
      */
     context(Network)
-    open fun SN.trainBatch(rowRange: IntRange): Double {
+    open suspend fun SN.trainBatch(rowRange: IntRange): Double {
         var batchError = 0.0
         for (i in rowRange) {
             batchError += trainRow(i)
@@ -189,24 +265,97 @@ abstract class SupervisedTrainer<SN: SupervisedNetwork> : EditableObject {
         }
     }
 
+    /**
+     * How training errors are passed to listeners, like the error plot of the trainer dialog.
+     */
+    class ErrorReporting: CopyableObject {
+
+        enum class Mode(private val description: String) {
+            EveryIteration("Every iteration (slows training)"),
+            Sampled("Latest error"),
+            Aggregated("Mean of errors");
+
+            override fun toString() = description
+        }
+
+        @UserParameter(
+            label = "Report",
+            description = "Every iteration waits for listeners to handle each error. The other modes buffer errors " +
+                    "and report the latest one or the mean since the last report, without slowing training.",
+            order = 1
+        )
+        var mode = Mode.Aggregated
+
+        @UserParameter(
+            label = "Iterations between errors",
+            description = "Only record the error of every n-th iteration",
+            minimumValue = 1.0,
+            order = 2
+        )
+        var interval = 1
+
+        @UserParameter(
+            label = "Max reports per second",
+            description = "Not used when reporting every iteration",
+            minimumValue = 1.0,
+            order = 3
+        )
+        var maxReportsPerSecond = 30
+
+        /**
+         * The error shown for a report.
+         */
+        fun valueOf(report: ErrorReport) = if (mode == Mode.Aggregated) report.mean else report.last
+
+        override fun copy(): CopyableObject {
+            return ErrorReporting().also {
+                it.mode = mode
+                it.interval = interval
+                it.maxReportsPerSecond = maxReportsPerSecond
+            }
+        }
+    }
+
     override val name = "Supervised Trainer"
 }
 
 class BackpropTrainer : SupervisedTrainer<BackpropNetwork>() {
 
+    @UserParameter(
+        label = "Parallel shards",
+        description = "Number of parts each batch is split into and trained on in parallel. Results depend on this " +
+                "number but not on the number of cores.",
+        minimumValue = 1.0,
+        order = 7
+    )
+    var shards = 1
+
     context(Network)
     override fun BackpropNetwork.trainRow(rowNum: Int): Double {
         inputLayer.setActivations(trainingSet.inputs.row(rowNum))
         val targetVec = trainingSet.targets.rowVectorTransposed(rowNum)
-        wmList.forwardPass(inputLayer.activations)
-        return wmList.applyBackprop(targetVec, epsilon = learningRate, lossFunction = lossFunction)
+        metrics.forward { wmList.forwardPass(inputLayer.activations) }
+        return metrics.backward { wmList.applyBackprop(targetVec, epsilon = learningRate, lossFunction = lossFunction) }
     }
 
     /**
-     * Backprop trains using error accumulation.
+     * Reused while the network's weight matrices stay the same. See [BatchedBackprop].
+     */
+    @Transient
+    private var batchedBackprop: BatchedBackprop? = null
+
+    /**
+     * Backprop trains using error accumulation. Networks that [BatchedBackprop] can handle are trained a batch at a
+     * time using matrix products, split into [shards] parts that run in parallel; others are trained one row at a time.
      */
     context(Network)
-    override fun BackpropNetwork.trainBatch(rowRange: IntRange): Double {
+    override suspend fun BackpropNetwork.trainBatch(rowRange: IntRange): Double {
+
+        if (BatchedBackprop.canTrain(wmList)) {
+            val engine = batchedBackprop?.takeIf { it.weightMatrices == wmList && it.shards == shards }
+                ?: BatchedBackprop(wmList.toList(), shards).also { batchedBackprop = it }
+            return engine.trainBatch(trainingSet, rowRange, learningRate, lossFunction, metrics)
+        }
 
         val weightAccumulator: HashMap<WeightMatrix, Matrix> = HashMap()
         val biasesAccumulator: HashMap<NeuronArray, Matrix> = HashMap()
@@ -216,8 +365,10 @@ class BackpropTrainer : SupervisedTrainer<BackpropNetwork>() {
         for (i in rowRange) {
             inputLayer.setActivations(trainingSet.inputs.row(i))
             val targetVec = trainingSet.targets.rowVectorTransposed(i)
-            wmList.forwardPass(inputLayer.activations)
-            error += wmList.accumulateBackprop(targetVec, weightAccumulator, biasesAccumulator, lossFunction = lossFunction)
+            metrics.forward { wmList.forwardPass(inputLayer.activations) }
+            error += metrics.backward {
+                wmList.accumulateBackprop(targetVec, weightAccumulator, biasesAccumulator, lossFunction = lossFunction)
+            }
         }
 
         weightAccumulator.forEach { (wm, delta) ->
@@ -249,8 +400,10 @@ class SRNTrainer : SupervisedTrainer<SRNNetwork>() {
         val inputVec = trainingSet.inputs.rowVectorTransposed(rowNum)
 
         inputLayer.activations = inputVec
-        update()
-        return weightMatrixTree.applyBackprop(targetVec, lossFunction = lossFunction, epsilon = learningRate)
+        metrics.forward { update() }
+        return metrics.backward {
+            weightMatrixTree.applyBackprop(targetVec, lossFunction = lossFunction, epsilon = learningRate)
+        }
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,154 @@
+package org.simbrain.network.trainers
+
+import java.lang.management.ManagementFactory
+
+/**
+ * Running totals of how fast a trainer trains and what its iterations cost. Every trainer keeps one, updated as it
+ * trains, and they can be read at any time (e.g. at the end of a long run) and [reset] to start a new measurement.
+ *
+ * Times are wall-clock nanoseconds. The forward and backward times are summed over the threads that did the work, so
+ * with parallel shards (see [BatchedBackprop]) they can add up to more than [trainingNanos]. Allocation is measured
+ * per thread with [com.sun.management.ThreadMXBean], and is zero on JVMs that do not support it.
+ */
+class TrainerMetrics {
+
+    var iterations = 0L
+        private set
+
+    /**
+     * Rows of the training data presented, counting a row again each time it is used.
+     */
+    var rows = 0L
+        private set
+
+    /**
+     * Time spent training, not counting the time listeners take to handle the trainer's events.
+     */
+    var trainingNanos = 0L
+        private set
+
+    var forwardNanos = 0L
+        private set
+
+    var backwardNanos = 0L
+        private set
+
+    /**
+     * Time spent waiting for listeners of the events fired after each iteration, like the error plot in the trainer
+     * dialog.
+     */
+    var eventNanos = 0L
+        private set
+
+    var allocatedBytes = 0L
+        private set
+
+    val rowsPerSecond get() = if (trainingNanos == 0L) 0.0 else rows * 1e9 / trainingNanos
+
+    val forwardNanosPerRow get() = if (rows == 0L) 0.0 else forwardNanos.toDouble() / rows
+
+    val backwardNanosPerRow get() = if (rows == 0L) 0.0 else backwardNanos.toDouble() / rows
+
+    val eventNanosPerIteration get() = if (iterations == 0L) 0.0 else eventNanos.toDouble() / iterations
+
+    val allocatedBytesPerIteration get() = if (iterations == 0L) 0.0 else allocatedBytes.toDouble() / iterations
+
+    private var iterationStart = 0L
+
+    private var iterationThread: Thread? = null
+
+    private var iterationAllocationStart = 0L
+
+    fun reset() {
+        iterations = 0
+        rows = 0
+        trainingNanos = 0
+        forwardNanos = 0
+        backwardNanos = 0
+        eventNanos = 0
+        allocatedBytes = 0
+    }
+
+    /**
+     * Start timing an iteration. Called by trainers before they train.
+     */
+    fun beginIteration() {
+        iterationThread = Thread.currentThread()
+        iterationAllocationStart = currentThreadAllocatedBytes()
+        iterationStart = System.nanoTime()
+    }
+
+    /**
+     * Finish timing an iteration that trained on [rowCount] rows. Allocation is only counted if the iteration ended on
+     * the thread it started on.
+     */
+    fun endIteration(rowCount: Int) {
+        trainingNanos += System.nanoTime() - iterationStart
+        if (iterationThread === Thread.currentThread()) {
+            allocatedBytes += currentThreadAllocatedBytes() - iterationAllocationStart
+        }
+        iterationThread = null
+        iterations++
+        rows += rowCount
+    }
+
+    fun addForwardNanos(nanos: Long) {
+        forwardNanos += nanos
+    }
+
+    fun addBackwardNanos(nanos: Long) {
+        backwardNanos += nanos
+    }
+
+    fun addEventNanos(nanos: Long) {
+        eventNanos += nanos
+    }
+
+    /**
+     * Add memory allocated by threads other than the one running the iteration.
+     */
+    fun addAllocatedBytes(bytes: Long) {
+        allocatedBytes += bytes
+    }
+
+    /**
+     * Run [block] and add its time to [forwardNanos].
+     */
+    inline fun <T> forward(block: () -> T): T {
+        val start = System.nanoTime()
+        try {
+            return block()
+        } finally {
+            addForwardNanos(System.nanoTime() - start)
+        }
+    }
+
+    /**
+     * Run [block] and add its time to [backwardNanos].
+     */
+    inline fun <T> backward(block: () -> T): T {
+        val start = System.nanoTime()
+        try {
+            return block()
+        } finally {
+            addBackwardNanos(System.nanoTime() - start)
+        }
+    }
+
+    override fun toString() = "$iterations iterations, %.1f rows/s, forward %.0f ns/row, backward %.0f ns/row, ".format(
+        rowsPerSecond, forwardNanosPerRow, backwardNanosPerRow
+    ) + "events %.0f ns/iteration, %.0f bytes/iteration".format(eventNanosPerIteration, allocatedBytesPerIteration)
+
+    companion object {
+
+        private val threadBean = (ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean)
+            ?.takeIf { it.isThreadAllocatedMemorySupported }
+            ?.also { it.isThreadAllocatedMemoryEnabled = true }
+
+        /**
+         * Bytes allocated so far by the current thread, or 0 if the JVM cannot measure it.
+         */
+        @JvmStatic
+        fun currentThreadAllocatedBytes(): Long = threadBean?.currentThreadAllocatedBytes ?: 0L
+    }
+}
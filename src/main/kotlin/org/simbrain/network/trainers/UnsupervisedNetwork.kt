@@ -59,6 +59,12 @@ class UnsupervisedTrainer: EditableObject {
     @Transient
     val events = TrainerEvents()
 
+    /**
+     * Throughput and cost of training so far. Unsupervised networks do not separate forward and backward passes.
+     */
+    @Transient
+    val metrics = TrainerMetrics()
+
     context(Network)
     suspend fun startTraining(network: UnsupervisedNetwork) {
         if (iteration >= maxIterations) {
@@ -85,8 +91,12 @@ class UnsupervisedTrainer: EditableObject {
     suspend fun trainOnce(network: UnsupervisedNetwork) {
         iteration++
         withContext(Dispatchers.Default) {
+            metrics.beginIteration()
             network.trainOnInputData()
+            metrics.endIteration(network.inputData.nrow())
+            val eventStart = System.nanoTime()
             events.progressUpdated.fire("Iteration" to iteration).await()
+            metrics.addEventNanos(System.nanoTime() - eventStart)
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,14 @@
+package org.simbrain.network.update_actions
+
+import org.simbrain.network.core.Network
+import org.simbrain.workspace.updater.UpdateAction
+
+/**
+ * Same as [BufferedUpdate] but free neurons and synapses are updated using flat arrays rather than by visiting
+ * each neuron and synapse object. Useful for large networks of free neurons. See [Network.compiledUpdate].
+ */
+class CompiledUpdate(private val network: Network) : UpdateAction("Compiled buffered update", "Buffered update of all top-level network models, with free neurons and synapses packed into arrays") {
+    override suspend fun run() {
+        network.compiledUpdate()
+    }
+}
@@ -0,0 +1,14 @@
+package org.simbrain.network.update_actions
+
+import org.simbrain.network.core.Network
+import org.simbrain.workspace.updater.UpdateAction
+
+/**
+ * Same as [BufferedUpdate] but spreads each phase of the update across the available cores. Useful for large networks
+ * of free neurons and synapses. See [Network.parallelBufferedUpdate].
+ */
+class ParallelBufferedUpdate(private val network: Network) : UpdateAction("Parallel buffered update", "Buffered update of all top-level network models, using multiple threads") {
+    override suspend fun run() {
+        network.parallelBufferedUpdate()
+    }
+}
@@ -269,10 +269,10 @@ open class AdExIFRule : SpikingNeuronUpdateRule<AdexData, AdexMatrixData>(), Noi
     context(Network)
     override fun apply(layer: Layer, dataHolder: AdexMatrixData) {
         if (layer is NeuronArray) {
+            val excitInputs = layer.excitatoryInputs
+            val inhibInputs = layer.inhibitoryInputs
             for (i in 0 until layer.size) {
-                val excitInputs = layer.excitatoryInputs
-                val inhibInputs = layer.inhibitoryInputs
-                val (spiked, v, w) = adExRule(
+                adExRule(
                     layer.activations.get(i, 0),
                     dataHolder.w[i],
                     excitInputs[i],
@@ -280,10 +280,11 @@ open class AdExIFRule : SpikingNeuronUpdateRule<AdexData, AdexMatrixData>(), Noi
                     dataHolder.lastSpikeTimes[i],
                     time,
                     timeStep
-                )
-                dataHolder.setHasSpiked(i, spiked)
-                layer.activations.set(i, 0, v)
-                dataHolder.w[i] = w
+                ) { spiked, v, w ->
+                    dataHolder.setHasSpiked(i, spiked)
+                    layer.activations.set(i, 0, v)
+                    dataHolder.w[i] = w
+                }
             }
         }
     }
@@ -294,25 +295,27 @@ open class AdExIFRule : SpikingNeuronUpdateRule<AdexData, AdexMatrixData>(), Noi
 
     context(Network)
     override fun apply(neuron: Neuron, data: AdexData) {
-        val (spiked, v, w) = adExRule(
+        adExRule(
             neuron.activation, data.w, neuron.excitatoryInputs, neuron.inhibitoryInputs,
             neuron.lastSpikeTime, time, timeStep
-        )
-        neuron.isSpike = spiked
-        neuron.activation = v
-        data.w = w
+        ) { spiked, v, w ->
+            neuron.isSpike = spiked
+            neuron.activation = v
+            data.w = w
+        }
 
     }
 
-    private fun adExRule(
+    private inline fun adExRule(
         initV: Double,
         initW: Double,
         excIn: Double,
         inhIn: Double,
         lastSpikeTime: Double,
         t: Double,
-        dt: Double
-    ): Triple<Boolean, Double, Double> {
+        dt: Double,
+        result: (spiked: Boolean, v: Double, w: Double) -> Unit
+    ) {
 
         var v_mem = initV
         var w = initW
@@ -361,7 +364,7 @@ open class AdExIFRule : SpikingNeuronUpdateRule<AdexData, AdexMatrixData>(), Noi
         }
         v_mem = clip(v_mem, -1000.0, 1000.0)
 
-        return Triple(isSpike, v_mem, w)
+        result(isSpike, v_mem, w)
 
     }
 
@@ -386,6 +389,9 @@ open class AdExIFRule : SpikingNeuronUpdateRule<AdexData, AdexMatrixData>(), Noi
         return cpy
     }
 
+    override val readsPostSynapticResponses: Boolean
+        get() = true
+
     override val name: String
         get() = "AdEx Integrate and Fire"
 
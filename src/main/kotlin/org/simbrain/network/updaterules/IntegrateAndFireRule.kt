@@ -137,23 +137,25 @@ open class IntegrateAndFireRule : SpikingNeuronUpdateRule<SpikingScalarData, Spi
     override fun apply(layer: Layer, dataHolder: SpikingMatrixData) {
         if (layer is NeuronArray) {
             for (i in 0 until layer.size) {
-                val(spiked, V) = intFireRule(
+                intFireRule(
                     time,
                     dataHolder.lastSpikeTimes[i],
                     timeStep,
                     layer.inputs.get(i, 0),
-                    layer.activations.get(i, 0))
-                dataHolder.setHasSpiked(i, spiked)
-                layer.activations.set(i, 0, V)
+                    layer.activations.get(i, 0)) { spiked, V ->
+                    dataHolder.setHasSpiked(i, spiked)
+                    layer.activations.set(i, 0, V)
+                }
             }
         }
     }
 
     context(Network)
     override fun apply(neuron: Neuron, data: SpikingScalarData) {
-        val (spiked, v) = intFireRule(time, neuron.lastSpikeTime, timeStep, neuron.input, neuron.activation)
-        neuron.isSpike = spiked
-        neuron.activation = v
+        intFireRule(time, neuron.lastSpikeTime, timeStep, neuron.input, neuron.activation) { spiked, v ->
+            neuron.isSpike = spiked
+            neuron.activation = v
+        }
     }
 
     /*
@@ -164,11 +166,12 @@ open class IntegrateAndFireRule : SpikingNeuronUpdateRule<SpikingScalarData, Spi
     * Isyn: synaptic input current Ibg: background input current tau: time
     * constant Vreset: reset potential theta: threshold
     */
-    fun intFireRule(t: Double,
+    private inline fun intFireRule(t: Double,
                     lastSpikeTime: Double,
                     timeStep: Double,
                     input: Double,
-                    memPotential: Double): Pair<Boolean, Double> {
+                    memPotential: Double,
+                    result: (spiked: Boolean, memPotential: Double) -> Unit) {
 
         // Incoming current is 0 during the refractory period, otherwise it's
         // equal to input and background current
@@ -188,11 +191,11 @@ open class IntegrateAndFireRule : SpikingNeuronUpdateRule<SpikingScalarData, Spi
         val dVm =
             timeStep * (-(memPotential - restingPotential) + resistance * synCurrent) / timeConstant
 
-        return if (memPotential >= threshold && t > lastSpikeTime + refractoryPeriod) {
+        if (memPotential >= threshold && t > lastSpikeTime + refractoryPeriod) {
             // println("Spike!")
-            Pair(true, resetPotential)
+            result(true, resetPotential)
         } else {
-            Pair(false, memPotential + dVm)
+            result(false, memPotential + dVm)
         }
 
     }
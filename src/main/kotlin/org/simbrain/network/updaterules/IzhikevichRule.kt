@@ -23,7 +23,6 @@ import org.simbrain.network.updaterules.interfaces.NoisyUpdateRule
 import org.simbrain.network.util.SpikingMatrixData
 import org.simbrain.network.util.SpikingScalarData
 import org.simbrain.util.UserParameter
-import org.simbrain.util.addi
 import org.simbrain.util.copyFrom
 import org.simbrain.util.stats.ProbabilityDistribution
 import org.simbrain.util.stats.distributions.UniformRealDistribution
@@ -122,55 +121,53 @@ class IzhikevichRule : SpikingNeuronUpdateRule<IzhikevichScalarData, IzhikevichM
             inputs += noiseGenerator.sampleDouble()
         }
         inputs += backgroundCurrent
-        val (newActivation, spiked, newRecovery) = izhikevichRule(timeStep, inputs, activation, data.recovery)
-        neuron.activation = newActivation
-        neuron.isSpike = spiked
-        data.recovery = newRecovery
+        izhikevichRule(timeStep, inputs, activation, data.recovery) { newActivation, spiked, newRecovery ->
+            neuron.activation = newActivation
+            neuron.isSpike = spiked
+            data.recovery = newRecovery
+        }
     }
 
     context(Network)
     override fun apply(layer: Layer, dataHolder: IzhikevichMatrixData) {
         if (layer is NeuronArray) {
             val inputs = layer.inputs
-
-            if (addNoise) {
-                inputs.addi(noiseGenerator.sampleDouble(layer.size))
-            }
-
-            inputs.add(backgroundCurrent)
-
-            val result = buildList {
-                for (i in 0 until layer.size) {
-                    val activation = layer.activations.get(i, 0)
-                    val input = layer.inputs.get(i, 0)
-                    add(izhikevichRule(timeStep, input, activation, dataHolder.recoveryMatrix[i, 0]))
+            val activations = layer.activations
+            val recovery = dataHolder.recoveryMatrix
+            for (i in 0 until layer.size) {
+                var input = inputs[i, 0]
+                if (addNoise) {
+                    input += noiseGenerator.sampleDouble()
+                }
+                input += backgroundCurrent
+                izhikevichRule(timeStep, input, activations[i, 0], recovery[i, 0]) { newActivation, spiked, newRecovery ->
+                    activations[i, 0] = newActivation
+                    recovery[i, 0] = newRecovery
+                    dataHolder.setHasSpiked(i, spiked)
                 }
             }
-
-            val activations = Matrix.column(result.map { it.activation }.toDoubleArray())
-            val spikes = result.map { it.isSpiked }.toBooleanArray()
-            val recovery = Matrix.column(result.map { it.recovery }.toDoubleArray())
-
-            layer.activations = activations
-            dataHolder.setHasSpiked(spikes)
-            dataHolder.recoveryMatrix.copyFrom(recovery)
         }
     }
 
-    private fun izhikevichRule(
+    /**
+     * Computes one Izhikevich step and passes the new activation, whether a spike occurred, and the new recovery value
+     * to [result]. Inlined so that no state object is allocated per neuron.
+     */
+    private inline fun izhikevichRule(
         timeStep: Double,
         input: Double,
         activation: Double,
-        recovery: Double
-    ): IzhikevichState {
+        recovery: Double,
+        result: (activation: Double, spiked: Boolean, recovery: Double) -> Unit
+    ) {
         var newRecovery = recovery + timeStep * (a * (b * activation - recovery))
         var value = activation + timeStep * (.04 * (activation * activation) + 5 * activation + 140 - recovery + input)
-        if (value >= threshold) {
+        val spiked = value >= threshold
+        if (spiked) {
             value = c
             newRecovery += d
-            return IzhikevichState(value, true, newRecovery)
         }
-        return IzhikevichState(value, false, newRecovery)
+        result(value, spiked, newRecovery)
     }
 
     // Equal chance of spiking or not spiking, taking on any value between
@@ -196,8 +193,6 @@ class IzhikevichRule : SpikingNeuronUpdateRule<IzhikevichScalarData, IzhikevichM
 
 }
 
-data class IzhikevichState(val activation: Double, val isSpiked: Boolean, val recovery: Double)
-
 class IzhikevichScalarData(
     @UserParameter(label = "Recovery", increment = .01, order = 1)
     var recovery: Double = 0.0
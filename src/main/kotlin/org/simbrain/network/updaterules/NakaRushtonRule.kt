@@ -133,28 +133,36 @@ class NakaRushtonRule : NeuronUpdateRule<NakaScalarData, NakaMatrixData>(), Clip
     context(Network)
     override fun apply(layer: Layer, dataHolder: NakaMatrixData) {
         for (i in 0 until layer.size) {
-            val result = nakaRushtonRule(
+            nakaRushtonRule(
                 layer.inputs[i, 0],
                 layer.activations[i, 0],
                 timeStep,
                 dataHolder.a[i, 0]
-            )
-            layer.activations[i, 0] = result.first
-            dataHolder.a[i, 0] = result.second
+            ) { activation, a ->
+                layer.activations[i, 0] = activation
+                dataHolder.a[i, 0] = a
+            }
         }
     }
 
     context(Network)
     override fun apply(neuron: Neuron, data: NakaScalarData) {
-        val result = nakaRushtonRule(
+        nakaRushtonRule(
             neuron.input, neuron.activation,
             timeStep, data.a
-        )
-        neuron.activation = result.first
-        data.a = result.second
+        ) { activation, a ->
+            neuron.activation = activation
+            data.a = a
+        }
     }
 
-    fun nakaRushtonRule(input: Double, activation: Double, timeStep: Double, a: Double): Pair<Double, Double> {
+    private inline fun nakaRushtonRule(
+        input: Double,
+        activation: Double,
+        timeStep: Double,
+        a: Double,
+        result: (activation: Double, a: Double) -> Unit
+    ) {
         var newActivation = activation
         var newA = a
 
@@ -177,7 +185,7 @@ class NakaRushtonRule : NeuronUpdateRule<NakaScalarData, NakaMatrixData>(), Clip
             timeStep * ((1 / timeConstant) * (-newActivation + s))
         }
 
-        return Pair(newActivation, newA)
+        result(newActivation, newA)
     }
 
     override fun createMatrixData(size: Int): NakaMatrixData {
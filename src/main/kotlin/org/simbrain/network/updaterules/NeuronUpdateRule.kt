@@ -72,6 +72,11 @@ abstract class NeuronUpdateRule<out DS : ScalarDataHolder, out DM : MatrixDataHo
      *
      * NOTE: Only a few of these have been done.
      *
+     * Where possible, implementations should update the layer in place: read inputs and write activations element by
+     * element into the layer's existing matrices, and keep any other state in the primitive buffers (e.g.
+     * [org.simbrain.network.util.SpikingMatrixData.spikes]) that [createMatrixData] allocates once. Inputs may be
+     * modified, e.g. to add noise, since they are cleared after each update.
+     *
      * @param layer reference to a layer and its matrix-valued data (inputs, activations).
      * @param dataHolder a holder for mutable data used in matrix versions of an update rule
      */
@@ -195,6 +200,14 @@ abstract class NeuronUpdateRule<out DS : ScalarDataHolder, out DM : MatrixDataHo
     open val isSpikingRule: Boolean
         get() = false
 
+    /**
+     * True if this rule reads the post-synaptic responses ([org.simbrain.network.core.Synapse.psr]) of incoming
+     * synapses directly, rather than just the neuron's summed input. Synapses onto such neurons are not compiled by
+     * [org.simbrain.network.core.CompiledNetwork].
+     */
+    open val readsPostSynapticResponses: Boolean
+        get() = false
+
     open fun getGraphicalValue(n: Neuron): Double {
         return n.activation
     }
@@ -171,6 +171,9 @@ class PointNeuronRule : SpikingNeuronUpdateRule<PointNeuronScalarData, SpikingMa
         abstract override fun toString(): String
     }
 
+    override val readsPostSynapticResponses: Boolean
+        get() = true
+
     override val timeType: Network.TimeType
         get() = Network.TimeType.DISCRETE
 
@@ -54,6 +54,9 @@ class ProductRule : LinearRule() {
         neuron.activation = `val`
     }
 
+    override val readsPostSynapticResponses: Boolean
+        get() = true
+
     override val name: String
         get() = "Product"
 
@@ -21,10 +21,8 @@ package org.simbrain.network.updaterules
 import org.simbrain.network.core.Layer
 import org.simbrain.network.core.Network
 import org.simbrain.network.core.Neuron
-import org.simbrain.network.core.NeuronArray
 import org.simbrain.network.util.EmptyMatrixData
 import org.simbrain.network.util.EmptyScalarData
-import org.simbrain.util.addi
 
 /**
  * Discrete sigmoidal provides various implementations of a standard sigmoidal neuron.
@@ -47,12 +45,15 @@ class SigmoidalRule : AbstractSigmoidalRule() {
 
     context(Network)
     override fun apply(layer: Layer, dataHolder: EmptyMatrixData) {
-        val array = layer as NeuronArray
-        val weightedInputs = array.inputs.clone()
-        if (addNoise) {
-            weightedInputs.addi(noiseGenerator.sampleDouble(array.size))
+        val inputs = layer.inputs
+        val activations = layer.activations
+        for (i in 0 until layer.size) {
+            var weightedInput = inputs[i, 0]
+            if (addNoise) {
+                weightedInput += noiseGenerator.sampleDouble()
+            }
+            activations[i, 0] = type.valueOf(weightedInput, lowerBound, upperBound, slope)
         }
-        array.activations = type.valueOf(weightedInputs, lowerBound, upperBound, slope)
     }
 
     override fun copy(): SigmoidalRule {
@@ -87,6 +87,9 @@ class TimedAccumulatorRule : SpikingThresholdRule() {
      */
     var currentState: Int = 0
 
+    override val readsPostSynapticResponses: Boolean
+        get() = true
+
     override val timeType: Network.TimeType
         get() = Network.TimeType.DISCRETE
 
@@ -0,0 +1,72 @@
+package org.simbrain.network.util
+
+import org.simbrain.network.core.Neuron
+import kotlin.math.floor
+
+/**
+ * A uniform grid over a set of points in the plane, used to find the points near a location without checking every
+ * point. Each point is put in a square cell of side [cellSize], so a search with a radius close to the cell size only
+ * has to check the points in a few cells.
+ *
+ * Usually created from a list of neurons, in which case point k is the position of neuron k. Positions are read when
+ * the index is created; create a new index if neurons move.
+ *
+ * Example: `SpatialGridIndex(targets, radius).neighbors(source.x, source.y, radius)`
+ */
+class SpatialGridIndex(private val xs: DoubleArray, private val ys: DoubleArray, val cellSize: Double) {
+
+    constructor(neurons: List<Neuron>, cellSize: Double) : this(
+        DoubleArray(neurons.size) { neurons[it].x },
+        DoubleArray(neurons.size) { neurons[it].y },
+        cellSize
+    )
+
+    init {
+        require(xs.size == ys.size) { "There must be as many y coordinates (${ys.size}) as x coordinates (${xs.size})" }
+        require(cellSize > 0) { "Cell size must be positive, but was $cellSize" }
+    }
+
+    val size get() = xs.size
+
+    /**
+     * Indices of the points in each non-empty cell, in ascending order.
+     */
+    private val cells: Map<Long, IntArray> = xs.indices
+        .groupBy { cellKey(cellOf(xs[it]), cellOf(ys[it])) }
+        .mapValues { (_, indices) -> indices.toIntArray() }
+
+    private val minColumn = xs.minOrNull()?.let { cellOf(it) } ?: 0
+    private val maxColumn = xs.maxOrNull()?.let { cellOf(it) } ?: -1
+    private val minRow = ys.minOrNull()?.let { cellOf(it) } ?: 0
+    private val maxRow = ys.maxOrNull()?.let { cellOf(it) } ?: -1
+
+    private fun cellOf(value: Double) = floor(value / cellSize).toInt()
+
+    private fun cellKey(column: Int, row: Int) = (column.toLong() shl 32) or (row.toLong() and 0xffffffffL)
+
+    /**
+     * Indices, in ascending order, of the points whose distance from (x, y) is less than [radius].
+     */
+    fun neighbors(x: Double, y: Double, radius: Double): IntArray {
+        var result = IntArray(16)
+        var count = 0
+        val radiusSquared = radius * radius
+        // Only visit cells within the bounds of the points, so that large radii stay cheap
+        for (column in maxOf(cellOf(x - radius), minColumn)..minOf(cellOf(x + radius), maxColumn)) {
+            for (row in maxOf(cellOf(y - radius), minRow)..minOf(cellOf(y + radius), maxRow)) {
+                val cell = cells[cellKey(column, row)] ?: continue
+                for (k in cell) {
+                    val dx = xs[k] - x
+                    val dy = ys[k] - y
+                    if (dx * dx + dy * dy < radiusSquared) {
+                        if (count == result.size) {
+                            result = result.copyOf(count * 2)
+                        }
+                        result[count++] = k
+                    }
+                }
+            }
+        }
+        return result.copyOf(count).also { it.sort() }
+    }
+}
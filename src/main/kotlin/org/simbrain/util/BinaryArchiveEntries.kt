@@ -0,0 +1,131 @@
+package org.simbrain.util
+
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.InputStream
+import java.io.OutputStream
+import java.nio.ByteBuffer
+import kotlin.math.min
+
+/**
+ * Large double arrays that are stored as separate binary entries of a workspace archive, rather than as text in a
+ * component's xml.
+ *
+ * While a component is saved or opened inside [use], [DoubleArrayConverter] (and so [MatrixConverter], which covers
+ * weight matrices, neuron arrays and matrix data frames) puts arrays with at least [MIN_SIZE] elements here and writes
+ * only a reference to them in the xml. The workspace serializer then writes each array as its own zip entry with
+ * [writeDoubles].
+ *
+ * @param prefix prefix for the names of added entries, e.g. "data/1_Network1/"
+ */
+class BinaryArchiveEntries @JvmOverloads constructor(
+    private val prefix: String = "",
+    private val arrays: MutableMap<String, DoubleArray> = LinkedHashMap()
+) {
+
+    /**
+     * Arrays by entry name, in the order they were added.
+     */
+    val entries: Map<String, DoubleArray> get() = arrays
+
+    /**
+     * Add an array and return the name of its entry.
+     */
+    fun add(array: DoubleArray): String = "$prefix${arrays.size}$EXTENSION".also { arrays[it] = array }
+
+    /**
+     * Add an array read from the entry with the given name.
+     */
+    fun put(name: String, array: DoubleArray) {
+        arrays[name] = array
+    }
+
+    /**
+     * Remove the entries whose names start with [prefix], e.g. once the component they were read for has been opened.
+     */
+    fun removeAll(prefix: String) {
+        arrays.keys.removeIf { it.startsWith(prefix) }
+    }
+
+    operator fun get(name: String): DoubleArray = arrays[name]
+        ?: throw IllegalStateException("Binary entry $name is missing from the archive")
+
+    /**
+     * Use these entries for arrays converted by the current thread while running [block].
+     */
+    fun <T> use(block: () -> T): T {
+        val previous = current.get()
+        current.set(this)
+        try {
+            return block()
+        } finally {
+            if (previous == null) current.remove() else current.set(previous)
+        }
+    }
+
+    companion object {
+
+        /**
+         * Arrays shorter than this are written in the xml.
+         */
+        const val MIN_SIZE = 1000
+
+        /**
+         * Marks an xml value as the name of a binary entry.
+         */
+        const val REFERENCE_PREFIX = "entry:"
+
+        const val EXTENSION = ".bin"
+
+        /**
+         * Number of doubles converted to bytes at a time.
+         */
+        private const val CHUNK_SIZE = 8192
+
+        private val current = ThreadLocal<BinaryArchiveEntries>()
+
+        /**
+         * The entries used by the current thread, if it is saving or opening a component.
+         */
+        @JvmStatic
+        fun current(): BinaryArchiveEntries? = current.get()
+
+        /**
+         * Write the length of [array] followed by its values as raw big-endian doubles. [output] is not closed.
+         */
+        @JvmStatic
+        fun writeDoubles(array: DoubleArray, output: OutputStream) {
+            DataOutputStream(output).writeLong(array.size.toLong())
+            val bytes = ByteBuffer.allocate(min(array.size, CHUNK_SIZE) * Double.SIZE_BYTES)
+            val doubles = bytes.asDoubleBuffer()
+            var start = 0
+            while (start < array.size) {
+                val count = min(CHUNK_SIZE, array.size - start)
+                doubles.clear()
+                doubles.put(array, start, count)
+                output.write(bytes.array(), 0, count * Double.SIZE_BYTES)
+                start += count
+            }
+        }
+
+        /**
+         * Read an array written by [writeDoubles].
+         */
+        @JvmStatic
+        fun readDoubles(input: InputStream): DoubleArray {
+            val data = DataInputStream(input)
+            val array = DoubleArray(data.readLong().toInt())
+            val bytes = ByteArray(min(array.size, CHUNK_SIZE) * Double.SIZE_BYTES)
+            val doubles = ByteBuffer.wrap(bytes).asDoubleBuffer()
+            var start = 0
+            while (start < array.size) {
+                val count = min(CHUNK_SIZE, array.size - start)
+                data.readFully(bytes, 0, count * Double.SIZE_BYTES)
+                doubles.clear()
+                doubles.get(array, start, count)
+                start += count
+            }
+            return array
+        }
+    }
+}
@@ -12,8 +12,12 @@ import java.time.ZonedDateTime
 import java.util.*
 import java.util.concurrent.ConcurrentLinkedQueue
 import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.LongAdder
 import java.util.function.BiConsumer
 import java.util.function.Consumer
+import kotlin.coroutines.Continuation
+import kotlin.coroutines.EmptyCoroutineContext
+import kotlin.coroutines.startCoroutine
 import kotlin.system.measureNanoTime
 import kotlin.time.Duration
 import kotlin.time.Duration.Companion.nanoseconds
@@ -45,6 +49,20 @@ import kotlin.time.Duration.Companion.seconds
  *
  * Events can be logged by seeing [useEventDebug] to true.
  *
+ * Firing an event normally launches a coroutine per handler from a coroutine on [Dispatchers.Default]. Two cases skip
+ * this and run on the firing thread, without allocating a [Deferred], launching a coroutine, or (for `fireAndBlock()`)
+ * calling `runBlocking`:
+ * - the event has no handlers, which is common when running without a GUI;
+ * - every handler was registered with `dispatcher = Dispatchers.Unconfined` and the event has no interval. The
+ * handlers are then called synchronously on the firing thread, before `fire()` returns, rather than later on a pool
+ * thread. A suspending handler runs until it first suspends and resumes wherever it is resumed. Exceptions the
+ * handlers throw propagate to the caller of `fire()`. [timeout] does not apply to these handlers, even if they were
+ * registered with `wait = true`: they have already run when `fire()` returns, so there is nothing to wait for, and a
+ * handler that blocks also blocks the firing thread. Unconfined handlers must therefore be short, like setting a flag
+ * or invalidating a cache.
+ *
+ * [elidedFireCount] counts how often this happens.
+ *
  * For a sense of how events work see [EventTesting]
  *
  */
@@ -59,6 +77,14 @@ open class Events(val timeout: Duration = 5.seconds): CoroutineScope {
      */
     private val eventMapping = HashMap<EventObject, ConcurrentLinkedQueue<EventObjectHandler>>()
 
+    private val elidedFires = LongAdder()
+
+    /**
+     * Number of times events in this object were fired without launching a coroutine, because they had no handlers or
+     * only handlers that run on the firing thread.
+     */
+    val elidedFireCount: Long get() = elidedFires.sum()
+
     enum class TimingMode {
         Throttle, Debounce
     }
@@ -98,7 +124,7 @@ open class Events(val timeout: Duration = 5.seconds): CoroutineScope {
          * @return A function that can be called to unregister the event handler.
          */
         protected fun onHelper(dispatcher: CoroutineDispatcher?, wait: Boolean, run: (new: Any?, old: Any?) -> Unit): () -> Boolean? {
-            val eventObjectHandler = EventObjectHandler(dispatcher, wait, run)
+            val eventObjectHandler = EventObjectHandler(dispatcher, wait, run, blockingHandler = run)
             eventMapping.getOrPut(this@EventObject) { ConcurrentLinkedQueue() }.add(eventObjectHandler)
             return {
                 eventMapping[this@EventObject]?.remove(eventObjectHandler)
@@ -138,8 +164,36 @@ open class Events(val timeout: Duration = 5.seconds): CoroutineScope {
                 }
             }?.filterIsInstance<Job>()
 
-        protected fun fireAllHelper(run: suspend (suspend (new: Any?, old: Any?) -> Unit) -> Unit): Deferred<Boolean> {
-            if (eventMapping[this@EventObject].isNullOrEmpty()) return CompletableDeferred(true)
+        /**
+         * Fire without launching any coroutines if there are no handlers, or if all handlers can run on this thread.
+         * Returns null if the event must be fired the usual way.
+         */
+        private fun tryFireInline(new: Any?, old: Any?): Deferred<Boolean>? {
+            val handlers = eventMapping[this@EventObject]
+            if (handlers.isNullOrEmpty()) {
+                elidedFires.increment()
+                return completedFire
+            }
+            if (interval == 0 && !useEventDebug && handlers.all { it.runsInline }) {
+                elidedFires.increment()
+                handlers.forEach { it.runInline(new, old) }
+                return completedFire
+            }
+            return null
+        }
+
+        /**
+         * Wait for a fired event to finish. Only blocks if the event was actually dispatched.
+         */
+        protected fun block(fired: Deferred<Boolean>): Boolean = if (fired === completedFire) {
+            true
+        } else {
+            runBlocking { printTiming { fired.await() } }
+        }
+
+        protected fun fireAllHelper(new: Any?, old: Any?): Deferred<Boolean> {
+            tryFireInline(new, old)?.let { return it }
+            val run: suspend (suspend (new: Any?, old: Any?) -> Unit) -> Unit = { handler -> handler(new, old) }
             val now = System.currentTimeMillis()
             if (interval == 0) {
                 return async {
@@ -175,7 +229,15 @@ open class Events(val timeout: Duration = 5.seconds): CoroutineScope {
             }
         }
 
-        protected fun batchFireAllHelper(new: Any?, old: Any?): Deferred<Boolean> = async {
+        protected fun batchFireAllHelper(new: Any?, old: Any?): Deferred<Boolean> {
+            if (eventMapping[this@EventObject].isNullOrEmpty()) {
+                elidedFires.increment()
+                return completedFire
+            }
+            return batchFire(new, old)
+        }
+
+        private fun batchFire(new: Any?, old: Any?): Deferred<Boolean> = async {
             val now = System.currentTimeMillis()
             mutex.withLock {
                 if (shouldClearQueue) {
@@ -262,14 +324,12 @@ open class Events(val timeout: Duration = 5.seconds): CoroutineScope {
         /**
          * Like java fireAndBlock() but suspends rather than blocking, so that the GUI remains responsive.
          */
-        fun fire() = fireAllHelper { handler -> handler(null, null) }
+        fun fire() = fireAllHelper(null, null)
 
         /**
          * Java fire and block. Fire event and wait for it to terminate before continuing.
          */
-        fun fireAndBlock() = runBlocking {
-            printTiming { fire().await() }
-        }
+        fun fireAndBlock() = block(fire())
 
     }
 
@@ -289,11 +349,9 @@ open class Events(val timeout: Duration = 5.seconds): CoroutineScope {
                 new, _ -> handler.accept(new as T)
         }
 
-        fun fire(new: T) = fireAllHelper { handler -> handler(new, null) }
+        fun fire(new: T) = fireAllHelper(new, null)
 
-        fun fireAndBlock(new: T) = runBlocking {
-            printTiming { fire(new).await() }
-        }
+        fun fireAndBlock(new: T) = block(fire(new))
 
     }
 
@@ -318,9 +376,7 @@ open class Events(val timeout: Duration = 5.seconds): CoroutineScope {
 
         fun fire(new: T) = batchFireAllHelper(new, null)
 
-        fun fireAndBlock(new: T) = runBlocking {
-            printTiming { fire(new).await() }
-        }
+        fun fireAndBlock(new: T) = block(fire(new))
     }
 
     /**
@@ -341,12 +397,13 @@ open class Events(val timeout: Duration = 5.seconds): CoroutineScope {
                 new, old -> handler.accept(new as T, old as T)
         }
 
-        fun fire(new: T, old: T) = fireAllHelper { handler -> if (new != old) handler(new, old) }
-
-        fun fireAndBlock(new: T, old: T) = runBlocking {
-            printTiming { fire(new, old).await() }
+        fun fire(new: T, old: T) = if (new != old) fireAllHelper(new, old) else {
+            elidedFires.increment()
+            completedFire
         }
 
+        fun fireAndBlock(new: T, old: T) = block(fire(new, old))
+
     }
 
     inner class BatchChangedEvent<T>(override val interval: Int = 0, override var timingMode: TimingMode =  TimingMode.Debounce) : EventObject() {
@@ -370,9 +427,7 @@ open class Events(val timeout: Duration = 5.seconds): CoroutineScope {
 
         fun fire(new: T, old: T) = batchFireAllHelper(new, old)
 
-        fun fireAndBlock(new: T, old: T) = runBlocking {
-            printTiming { fire(new, old).await() }
-        }
+        fun fireAndBlock(new: T, old: T) = block(fire(new, old))
     }
 
 }
@@ -381,8 +436,28 @@ data class EventObjectHandler(
     val dispatcher: CoroutineDispatcher?,
     val wait: Boolean,
     val handler: suspend (new: Any?, old: Any?) -> Unit,
-    val stackTraceElements: Array<StackTraceElement>? = if (useEventDebug) Thread.getAllStackTraces()[Thread.currentThread()] else null
+    val stackTraceElements: Array<StackTraceElement>? = if (useEventDebug) Thread.getAllStackTraces()[Thread.currentThread()] else null,
+    /**
+     * The handler as a plain function, when it was registered as one (e.g. from Java).
+     */
+    val blockingHandler: ((new: Any?, old: Any?) -> Unit)? = null
 ) {
+
+    /**
+     * Whether the handler is called directly on the firing thread, without a timeout, when every handler of the event
+     * can be. See [Events].
+     */
+    val runsInline get() = dispatcher === Dispatchers.Unconfined
+
+    /**
+     * Run the handler on the current thread. A suspending handler runs until it first suspends, as it would with
+     * [Dispatchers.Unconfined].
+     */
+    fun runInline(new: Any?, old: Any?) {
+        blockingHandler?.let { return it(new, old) }
+        suspend { handler(new, old) }.startCoroutine(Continuation(EmptyCoroutineContext) { it.getOrThrow() })
+    }
+
     override fun equals(other: Any?): Boolean {
         if (this === other) return true
         if (javaClass != other?.javaClass) return false
@@ -417,6 +492,11 @@ data class DebugInfo(val timeStamp: Long, val duration: Duration, val initiator:
     }
 }
 
+/**
+ * Returned by fires that did not need to launch a coroutine. A completed deferred cannot change, so one is shared.
+ */
+private val completedFire: Deferred<Boolean> = CompletableDeferred(true)
+
 /**
  * Use when [useEventDebug] is true to collect debug information about events.
  */
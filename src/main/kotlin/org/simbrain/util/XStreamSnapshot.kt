@@ -0,0 +1,225 @@
+package org.simbrain.util
+
+import com.thoughtworks.xstream.XStream
+import com.thoughtworks.xstream.converters.ErrorWriter
+import com.thoughtworks.xstream.io.AbstractReader
+import com.thoughtworks.xstream.io.AbstractWriter
+import com.thoughtworks.xstream.io.StreamException
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.nio.ByteBuffer
+
+/*
+ * A compact binary alternative to xml for XStream, used to copy objects in memory.
+ *
+ * XStream walks the object graph exactly as it does for xml, so references, ids and custom converters behave the same,
+ * but nothing is formatted or parsed as text: node and attribute names are written once and then referred to by index,
+ * and double arrays and matrices are written as raw blocks of doubles (see [DoubleArrayConverter] and
+ * [MatrixConverter]). The format is not versioned and is not meant for files.
+ */
+
+private const val START_NODE = 1
+private const val ATTRIBUTE = 2
+private const val VALUE = 3
+private const val DOUBLES = 4
+private const val END_NODE = 5
+
+/**
+ * Serialize [source] to a binary snapshot that can be read back with [fromSnapshot] using an XStream with the same
+ * configuration.
+ */
+fun XStream.toSnapshot(source: Any): ByteArray {
+    val bytes = ByteArrayOutputStream()
+    val writer = SnapshotWriter(DataOutputStream(bytes))
+    marshal(source, writer)
+    writer.close()
+    return bytes.toByteArray()
+}
+
+/**
+ * Create a new object from a snapshot made by [toSnapshot].
+ */
+fun XStream.fromSnapshot(snapshot: ByteArray): Any = unmarshal(SnapshotReader(snapshot))
+
+/**
+ * Writes the binary snapshot format.
+ */
+class SnapshotWriter(private val out: DataOutputStream) : AbstractWriter() {
+
+    private val names = HashMap<String, Int>()
+
+    override fun startNode(name: String) {
+        out.writeByte(START_NODE)
+        writeName(name)
+    }
+
+    override fun addAttribute(name: String, value: String) {
+        out.writeByte(ATTRIBUTE)
+        writeName(name)
+        writeString(value)
+    }
+
+    override fun setValue(text: String) {
+        out.writeByte(VALUE)
+        writeString(text)
+    }
+
+    /**
+     * Set the value of the current node to a raw block of doubles, read back with [SnapshotReader.getDoubles].
+     */
+    fun setValue(doubles: DoubleArray) {
+        out.writeByte(DOUBLES)
+        out.writeInt(doubles.size)
+        out.write(DoubleArrayConverter.doubleArrayToByteArray(doubles))
+    }
+
+    override fun endNode() {
+        out.writeByte(END_NODE)
+    }
+
+    override fun flush() {
+        out.flush()
+    }
+
+    override fun close() {
+        out.close()
+    }
+
+    private fun writeName(name: String) {
+        val index = names[name]
+        if (index != null) {
+            out.writeInt(index)
+        } else {
+            out.writeInt(-1)
+            writeString(name)
+            names[name] = names.size
+        }
+    }
+
+    private fun writeString(text: String) {
+        val bytes = text.toByteArray(Charsets.UTF_8)
+        out.writeInt(bytes.size)
+        out.write(bytes)
+    }
+}
+
+/**
+ * Reads the binary snapshot format. The whole snapshot is decoded into a tree of nodes when the reader is created.
+ */
+class SnapshotReader(snapshot: ByteArray) : AbstractReader() {
+
+    private class Node(val name: String) {
+        val attributeNames = ArrayList<String>(0)
+        val attributeValues = ArrayList<String>(0)
+        var value = ""
+        var doubles: DoubleArray? = null
+        val children = ArrayList<Node>(0)
+    }
+
+    /**
+     * Nodes from the root down to the current node.
+     */
+    private val path = ArrayList<Node>()
+
+    /**
+     * For each node in [path], the index of the next child to move down to.
+     */
+    private val nextChild = ArrayList<Int>()
+
+    private val current get() = path.last()
+
+    init {
+        val buffer = ByteBuffer.wrap(snapshot)
+        val names = ArrayList<String>()
+
+        fun readString(): String {
+            val length = buffer.int
+            return String(snapshot, buffer.position(), length, Charsets.UTF_8).also {
+                buffer.position(buffer.position() + length)
+            }
+        }
+
+        fun readName(): String {
+            val index = buffer.int
+            return if (index < 0) readString().also { names.add(it) } else names[index]
+        }
+
+        val open = ArrayDeque<Node>()
+        var root: Node? = null
+        while (buffer.hasRemaining()) {
+            when (buffer.get().toInt()) {
+                START_NODE -> {
+                    val node = Node(readName())
+                    if (open.isEmpty()) {
+                        root = node
+                    } else {
+                        open.last().children.add(node)
+                    }
+                    open.addLast(node)
+                }
+                ATTRIBUTE -> with(open.last()) {
+                    attributeNames.add(readName())
+                    attributeValues.add(readString())
+                }
+                VALUE -> open.last().value = readString()
+                DOUBLES -> {
+                    val doubles = DoubleArray(buffer.int)
+                    buffer.asDoubleBuffer().get(doubles)
+                    buffer.position(buffer.position() + doubles.size * Double.SIZE_BYTES)
+                    open.last().doubles = doubles
+                }
+                END_NODE -> open.removeLast()
+                else -> throw StreamException("Invalid snapshot at byte ${buffer.position() - 1}")
+            }
+        }
+        path.add(root ?: throw StreamException("Empty snapshot"))
+        nextChild.add(0)
+    }
+
+    /**
+     * Values of the current node if it was written with [SnapshotWriter.setValue] as doubles. Otherwise, the text
+     * value is parsed as in [DoubleArrayConverter].
+     */
+    fun getDoubles(): DoubleArray = current.doubles ?: DoubleArrayConverter.stringToArray(current.value)
+
+    override fun hasMoreChildren() = nextChild.last() < current.children.size
+
+    override fun moveDown() {
+        val index = nextChild.last()
+        nextChild[nextChild.lastIndex] = index + 1
+        path.add(current.children[index])
+        nextChild.add(0)
+    }
+
+    override fun moveUp() {
+        path.removeLast()
+        nextChild.removeLast()
+    }
+
+    override fun peekNextChild(): String? = current.children.getOrNull(nextChild.last())?.name
+
+    override fun getNodeName() = current.name
+
+    /**
+     * The text value of the current node. Nodes holding raw doubles have no text value; use [getDoubles].
+     */
+    override fun getValue() = current.value
+
+    override fun getAttribute(name: String): String? = current.attributeNames.indexOf(name).let {
+        if (it < 0) null else current.attributeValues[it]
+    }
+
+    override fun getAttribute(index: Int): String = current.attributeValues[index]
+
+    override fun getAttributeCount() = current.attributeNames.size
+
+    override fun getAttributeName(index: Int): String = current.attributeNames[index]
+
+    override fun getAttributeNames(): MutableIterator<String> = current.attributeNames.iterator()
+
+    override fun appendErrors(errorWriter: ErrorWriter) {
+        errorWriter.add("snapshot path", path.joinToString("/", "/") { it.name })
+    }
+
+    override fun close() {}
+}
@@ -0,0 +1,213 @@
+package org.simbrain.workspace
+
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withContext
+import org.simbrain.workspace.couplings.compileGetter
+import org.simbrain.workspace.serialization.WorkspaceSerializer
+import org.simbrain.workspace.updater.UpdateAllAction
+import smile.math.matrix.Matrix
+import java.io.File
+import java.io.FileInputStream
+import java.io.Writer
+import kotlin.system.measureNanoTime
+
+/**
+ * Runs a workspace headless, as fast as possible, optionally writing the values of selected producers to a CSV file.
+ *
+ * Unlike [Workspace.iterateSuspend], iterations are run without firing the updater's run and update events and without
+ * the performance monitor, and nothing is sent to a GUI. Couplings and components are updated as in the default
+ * update: couplings first, then all components in parallel. If the workspace has custom update actions, they are run
+ * in order instead.
+ *
+ * Only the updater's events are skipped. Components still fire their models' events as they update (e.g. a network's
+ * neurons and weight matrices fire their updated events), since models also listen to each other's events. Opened
+ * headless these events usually have no handlers, so firing them is cheap (see [org.simbrain.util.Events]), but
+ * handlers registered by the models themselves still run.
+ *
+ * Example:
+ * ```
+ * BatchRunner.open(File("sim.zip")).apply {
+ *     record("Network1:Neuron_1:Activation")
+ *     File("out.csv").bufferedWriter().use { run(10_000, it) }
+ * }
+ * ```
+ *
+ * See [main] for the command line version.
+ */
+class BatchRunner(val workspace: Workspace) {
+
+    private class Recorded(val producer: Producer) {
+        val getter = compileGetter(producer)
+    }
+
+    private val recorded = ArrayList<Recorded>()
+
+    /**
+     * Producers whose values are written by [run].
+     */
+    val recordedProducers: List<Producer> get() = recorded.map { it.producer }
+
+    /**
+     * Current values of the recorded producers.
+     */
+    val recordedValues: List<Any?> get() = recorded.map { it.getter() }
+
+    /**
+     * Write the value of [producer] after each recorded iteration.
+     */
+    fun record(producer: Producer) {
+        recorded.add(Recorded(producer))
+    }
+
+    /**
+     * Write the value of the producer with the given description after each recorded iteration. The description is
+     * either the producer's simple description, e.g. "Network1:Neuron_1:Activation", or its id and method name,
+     * e.g. "Neuron_1:getActivation".
+     */
+    fun record(description: String) {
+        record(findProducer(description))
+    }
+
+    private fun findProducer(description: String): Producer = with(workspace.couplingManager) {
+        workspace.componentList.asSequence()
+            .flatMap { it.producers }
+            .firstOrNull { it.simpleDescription == description || "${it.id}:${it.method.name}" == description }
+            ?: throw IllegalArgumentException("No producer matching \"$description\" was found")
+    }
+
+    /**
+     * Run [iterations] iterations. If [output] is given, a CSV row with the iteration number and the recorded values
+     * is written to it every [recordEvery] iterations, after a header row. Double arrays and matrices are written as
+     * one column per element.
+     *
+     * @return the time taken in nanoseconds
+     */
+    suspend fun run(iterations: Int, output: Writer? = null, recordEvery: Int = 1): Long {
+        require(recordEvery > 0) { "recordEvery must be positive, but was $recordEvery" }
+        val updater = workspace.updater
+        var wroteHeader = false
+        return measureNanoTime {
+            withContext(workspace.coroutineContext) {
+                repeat(iterations) {
+                    iterate()
+                    updater.time++
+                    if (output != null && recorded.isNotEmpty() && updater.time % recordEvery == 0) {
+                        val values = recordedValues
+                        if (!wroteHeader) {
+                            output.writeRow("iteration", expandColumnNames(recordedProducers, values))
+                            wroteHeader = true
+                        }
+                        output.writeRow(updater.time.toString(), expandColumnValues(values).map { it.toString() })
+                    }
+                }
+            }
+            output?.flush()
+        }
+    }
+
+    /**
+     * One iteration without the updater's events or performance recording. Events fired by the components' models
+     * are not suppressed.
+     */
+    private suspend fun iterate() {
+        val actions = workspace.updater.updateManager.actionList
+        if (actions.singleOrNull() is UpdateAllAction) {
+            workspace.couplingManager.updateCouplings()
+            coroutineScope {
+                workspace.componentList
+                    .filter { it.updateOn }
+                    .map { async { it.update() } }
+                    .awaitAll()
+            }
+        } else {
+            actions.forEach { it.run() }
+        }
+    }
+
+    private fun Writer.writeRow(first: String, rest: List<String>) {
+        write(first)
+        rest.forEach {
+            write(",")
+            write(if (it.contains(',') || it.contains('"')) "\"${it.replace("\"", "\"\"")}\"" else it)
+        }
+        write("\n")
+    }
+
+    companion object {
+
+        /**
+         * Open a saved workspace (.zip) headless.
+         */
+        @JvmStatic
+        fun open(file: File): BatchRunner {
+            val workspace = Workspace()
+            FileInputStream(file).use { WorkspaceSerializer(workspace).deserialize(it) }
+            return BatchRunner(workspace)
+        }
+    }
+}
+
+/**
+ * Column names for the values of [producers], with one column per element for double arrays and matrices.
+ */
+internal fun expandColumnNames(producers: List<Producer>, values: List<Any?>): List<String> =
+    producers.zip(values).flatMap { (producer, value) ->
+        val name = producer.simpleDescription
+        when (value) {
+            is DoubleArray -> value.indices.map { "$name[$it]" }
+            is Matrix -> (0 until value.size().toInt()).map { "$name[$it]" }
+            else -> listOf(name)
+        }
+    }
+
+/**
+ * Produced values with double arrays and matrices expanded to their elements, matching [expandColumnNames].
+ */
+internal fun expandColumnValues(values: List<Any?>): List<Any?> = values.flatMap { value ->
+    when (value) {
+        is DoubleArray -> value.toList()
+        is Matrix -> value.toArray().flatMap { row -> row.toList() }
+        else -> listOf(value)
+    }
+}
+
+/**
+ * Called by build.gradle#runBatch to run a saved workspace headless from the command line.
+ *
+ * Usage: `<workspace.zip> <iterations> [--out file.csv] [--every n] [--record producer]...`
+ *
+ * `--record` can be repeated; see [BatchRunner.record] for how producers are named.
+ */
+fun main(args: Array<String>) {
+    val usage = "Usage: <workspace.zip> <iterations> [--out file.csv] [--every n] [--record producer]..."
+    if (args.size < 2) throw IllegalArgumentException(usage)
+    val file = File(args[0])
+    val iterations = args[1].toIntOrNull() ?: throw IllegalArgumentException("Invalid iteration count ${args[1]}\n$usage")
+
+    var output: File? = null
+    var every = 1
+    val producers = ArrayList<String>()
+    var i = 2
+    while (i < args.size) {
+        val value = args.getOrNull(i + 1) ?: throw IllegalArgumentException("Missing value for ${args[i]}\n$usage")
+        when (args[i]) {
+            "--out" -> output = File(value)
+            "--every" -> every = value.toIntOrNull() ?: throw IllegalArgumentException("Invalid value $value for --every")
+            "--record" -> producers.add(value)
+            else -> throw IllegalArgumentException("Unknown option ${args[i]}\n$usage")
+        }
+        i += 2
+    }
+
+    val runner = BatchRunner.open(file)
+    producers.forEach { runner.record(it) }
+    val nanos = runBlocking {
+        val writer = output?.bufferedWriter()
+        writer.use { runner.run(iterations, it, every) }
+    }
+    val seconds = nanos / 1e9
+    println("Ran $iterations iterations in %.3f s (%.1f iterations/s)".format(seconds, iterations / seconds))
+}
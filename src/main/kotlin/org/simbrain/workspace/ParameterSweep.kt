@@ -0,0 +1,174 @@
+package org.simbrain.workspace
+
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import org.simbrain.util.UserParameter
+import org.simbrain.util.propertyeditor.GuiEditable
+import org.simbrain.util.table.BasicDataFrame
+import org.simbrain.util.table.SimbrainDataFrame
+import org.simbrain.workspace.serialization.WorkspaceSerializer
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.util.concurrent.Executors
+import kotlin.reflect.KClass
+import kotlin.reflect.KMutableProperty1
+import kotlin.reflect.full.memberProperties
+import kotlin.reflect.jvm.isAccessible
+import kotlin.reflect.jvm.jvmErasure
+
+/**
+ * Runs many variants of one workspace at the same time in a single JVM and collects their results in a table.
+ *
+ * The workspace is read or serialized once into memory. Each variant deserializes its own copy from those bytes with
+ * [WorkspaceSerializer], sets its parameter overrides (see [setParameter]), runs headless with a [BatchRunner], and
+ * then reads the output producers. At most [threads] variants exist at once, and their updates run on a pool of that
+ * many threads.
+ *
+ * Example:
+ * ```
+ * val results = ParameterSweep.open(File("sim.zip")).run(
+ *     variants = listOf(0.1, 0.5, 0.9).map { mapOf("Network1/Neuron_1.bias" to it) },
+ *     iterations = 1000,
+ *     outputs = listOf("Neuron_2:getActivation")
+ * )
+ * ```
+ */
+class ParameterSweep(private val archive: ByteArray, val threads: Int = Runtime.getRuntime().availableProcessors()) {
+
+    init {
+        require(threads > 0) { "Thread count must be positive, but was $threads" }
+    }
+
+    /**
+     * Create a fresh copy of the workspace.
+     */
+    fun newWorkspace(): Workspace = Workspace().also { workspace ->
+        ByteArrayInputStream(archive).use { WorkspaceSerializer(workspace).deserialize(it) }
+    }
+
+    /**
+     * Run each variant for [iterations] iterations and return a table with one row per variant. The table has a
+     * column for each override address used by any variant, followed by the final values of the [outputs] producers
+     * (named as in [BatchRunner.record]), with double arrays expanded to one column per element.
+     *
+     * @param variants parameter overrides for each variant, from address to value
+     */
+    suspend fun run(variants: List<Map<String, Any?>>, iterations: Int, outputs: List<String>): SimbrainDataFrame {
+        val addresses = variants.flatMap { it.keys }.distinct()
+        val permits = Semaphore(threads)
+        val results = Executors.newFixedThreadPool(threads).asCoroutineDispatcher().use { dispatcher ->
+            coroutineScope {
+                variants.map { overrides ->
+                    async(dispatcher) {
+                        permits.withPermit {
+                            val workspace = newWorkspace()
+                            workspace.coroutineContext = dispatcher + SupervisorJob()
+                            overrides.forEach { (address, value) -> workspace.setParameter(address, value) }
+                            val runner = BatchRunner(workspace)
+                            outputs.forEach { runner.record(it) }
+                            runner.run(iterations)
+                            runner.recordedProducers to runner.recordedValues
+                        }
+                    }
+                }.awaitAll()
+            }
+        }
+
+        val outputNames = results.firstOrNull()?.let { (producers, values) -> expandColumnNames(producers, values) }
+            ?: outputs
+        val rows = variants.zip(results).map { (overrides, result) ->
+            (addresses.map { overrides[it] } + expandColumnValues(result.second)).toMutableList()
+        }.toMutableList()
+        return BasicDataFrame(rows).apply {
+            if (rows.isNotEmpty()) {
+                columnNames = addresses + outputNames
+            }
+        }
+    }
+
+    companion object {
+
+        /**
+         * Sweep over copies of a saved workspace (.zip).
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun open(file: File, threads: Int = Runtime.getRuntime().availableProcessors()) =
+            ParameterSweep(file.readBytes(), threads)
+
+        /**
+         * Sweep over copies of a workspace in memory. Later changes to [workspace] do not affect the copies.
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun of(workspace: Workspace, threads: Int = Runtime.getRuntime().availableProcessors()): ParameterSweep {
+            val bytes = ByteArrayOutputStream()
+            WorkspaceSerializer(workspace).serialize(bytes, headless = true)
+            return ParameterSweep(bytes.toByteArray(), threads)
+        }
+    }
+}
+
+/**
+ * Set a user parameter of a model in this workspace. The address has the form `component/modelId.property`, e.g.
+ * `Network1/Neuron_1.bias`, where the model is any [AttributeContainer] of the component with that id. The property
+ * path can continue into nested objects, e.g. `Network1/Neuron_1.updateRule.slope`. The last property must be a
+ * [UserParameter] or [GuiEditable] property. Numbers are converted to the property's type and strings are parsed.
+ */
+fun Workspace.setParameter(address: String, value: Any?) {
+    val componentName = address.substringBefore('/', "")
+    val path = address.substringAfter('/').split('.')
+    require(componentName.isNotEmpty() && path.size >= 2) {
+        "Parameter address $address should have the form component/modelId.property"
+    }
+    val component = getComponent(componentName)
+        ?: throw IllegalArgumentException("No component named $componentName")
+    val model = component.attributeContainers.firstOrNull { it.id == path[0] }
+        ?: throw IllegalArgumentException("No model with id ${path[0]} in $componentName")
+
+    var target: Any = model
+    for (name in path.subList(1, path.lastIndex)) {
+        val property = target::class.memberProperties.firstOrNull { it.name == name }
+            ?: throw IllegalArgumentException("${target::class.simpleName} has no property $name")
+        property.isAccessible = true
+        target = property.getter.call(target) ?: throw IllegalArgumentException("Property $name of $address is null")
+    }
+
+    val name = path.last()
+    @Suppress("UNCHECKED_CAST")
+    val property = target::class.memberProperties.firstOrNull { it.name == name } as? KMutableProperty1<Any, Any?>
+        ?: throw IllegalArgumentException("${target::class.simpleName} has no writable property $name")
+    property.isAccessible = true
+    val isUserParameter = property.annotations.any { it is UserParameter } ||
+            property.getter.annotations.any { it is UserParameter } ||
+            property.getDelegate(target) is GuiEditable<*, *>
+    require(isUserParameter) { "Property $name of ${target::class.simpleName} is not a user parameter" }
+    property.set(target, convertParameter(value, property.returnType.jvmErasure))
+}
+
+private fun convertParameter(value: Any?, type: KClass<*>): Any? = when {
+    value == null -> null
+    type.isInstance(value) -> value
+    value is Number -> when (type) {
+        Double::class -> value.toDouble()
+        Float::class -> value.toFloat()
+        Int::class -> value.toInt()
+        Long::class -> value.toLong()
+        else -> value
+    }
+    value is String -> when (type) {
+        Double::class -> value.toDouble()
+        Float::class -> value.toFloat()
+        Int::class -> value.toInt()
+        Long::class -> value.toLong()
+        Boolean::class -> value.toBooleanStrict()
+        else -> value
+    }
+    else -> value
+}
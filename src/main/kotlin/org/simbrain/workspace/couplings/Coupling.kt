@@ -21,6 +21,11 @@ import java.lang.reflect.Type
  */
 class Coupling private constructor(val producer: Producer, val consumer: Consumer) {
 
+    /**
+     * Calls the producer's getter and the consumer's setter without reflection. See [compileInvoker].
+     */
+    private val invoker = compileInvoker(producer, consumer)
+
     /**
      * This is the main action!  Set the value of the consumer based on the
      * value of the producer.
@@ -30,7 +35,7 @@ class Coupling private constructor(val producer: Producer, val consumer: Consume
      * (cf http://www.javapractices.com/topic/TopicAction.do?Id=15)).
      */
     fun update() {
-        consumer.setValue(producer.value)
+        invoker.update()
     }
 
     val type: Type
@@ -1,6 +1,7 @@
 package org.simbrain.workspace.couplings
 
 import org.simbrain.workspace.*
+import smile.math.matrix.Matrix
 import java.lang.reflect.Method
 
 /**
@@ -81,6 +82,7 @@ class CouplingCache(val couplingManager: CouplingManager) {
 
         val customDescription = javaClass.findMethod(annotation.customDescriptionMethod)
         val arrayDescriptionMethod = javaClass.findMethod(annotation.arrayDescriptionMethod)
+        val vectorMethod = javaClass.findMatrixGetter(annotation.vectorMethod)
 
         val customPriorityMethod = javaClass.findMethod(annotation.customPriorityMethod)
         val priority = customPriorityMethod?.invoke(this) as? Int ?: annotation.priority
@@ -91,6 +93,7 @@ class CouplingCache(val couplingManager: CouplingManager) {
                 .priority(priority)
                 .customDescription(customDescription)
                 .arrayDescriptionMethod(arrayDescriptionMethod)
+                .vectorMethod(vectorMethod)
                 .build()
     }(this)
 
@@ -109,6 +112,7 @@ class CouplingCache(val couplingManager: CouplingManager) {
                 ?: throw IllegalArgumentException("Method ${method.name} is not consumable.")
 
         val customDescription = javaClass.findMethod(annotation.customDescriptionMethod)
+        val vectorMethod = javaClass.findMatrixSetter(annotation.vectorMethod)
 
         val customPriorityMethod = javaClass.findMethod(annotation.customPriorityMethod)
         val priority = customPriorityMethod?.invoke(this) as? Int ?: annotation.priority
@@ -117,6 +121,7 @@ class CouplingCache(val couplingManager: CouplingManager) {
                 .priority(priority)
                 .description(annotation.description)
                 .customDescription(customDescription)
+                .vectorMethod(vectorMethod)
                 .build()
     }(this)
 
@@ -225,6 +230,12 @@ class CouplingCache(val couplingManager: CouplingManager) {
 
     private fun Class<AttributeContainer>.findMethod(name: String): Method? = methods.find { it.name == name }
 
+    private fun Class<AttributeContainer>.findMatrixGetter(name: String): Method? = methods
+        .find { it.name == name && it.parameterCount == 0 && Matrix::class.java.isAssignableFrom(it.returnType) }
+
+    private fun Class<AttributeContainer>.findMatrixSetter(name: String): Method? = methods
+        .find { it.name == name && it.parameterTypes.contentEquals(arrayOf(Matrix::class.java)) }
+
     private fun Class<AttributeContainer>.findConsumableMethod(name: String): Method? = methods
         .firstOrNull { it.isConsumable() && it.name == name }
 
@@ -0,0 +1,183 @@
+package org.simbrain.workspace.couplings
+
+import org.simbrain.workspace.Consumer
+import org.simbrain.workspace.Producer
+import smile.math.matrix.Matrix
+import java.lang.invoke.LambdaMetafactory
+import java.lang.invoke.MethodHandle
+import java.lang.invoke.MethodHandles
+import java.lang.invoke.MethodType
+import java.lang.invoke.MethodType.methodType
+import java.lang.reflect.Method
+import java.util.concurrent.ConcurrentHashMap
+import java.util.function.DoubleConsumer
+import java.util.function.DoubleSupplier
+import java.util.function.Supplier
+import java.util.function.Consumer as ValueConsumer
+
+/**
+ * Passes one value from a producer to a consumer. Created once per [Coupling] by [compileInvoker], so that updating a
+ * coupling calls the getter and setter directly rather than through [Method.invoke].
+ */
+internal fun interface CouplingInvoker {
+    fun update()
+}
+
+/**
+ * Create an invoker for a coupling from [producer] to [consumer].
+ *
+ * The getter and setter are turned into functional interfaces bound to their base objects using [LambdaMetafactory]:
+ * [DoubleSupplier] and [DoubleConsumer] for double couplings, so values are never boxed, and [Supplier] and
+ * [java.util.function.Consumer] for everything else, including double arrays. Generating the lambda class is the slow
+ * part, so it is done once per method and shared by every coupling that uses that method.
+ *
+ * If a method cannot be compiled, e.g. because it is not public, the coupling falls back to the reflective
+ * [Producer.getValue] and [Consumer.setValue].
+ *
+ * Double array couplings whose producer and consumer both declare a vector method are passed as matrices instead;
+ * see [compileVectorInvoker].
+ */
+internal fun compileInvoker(producer: Producer, consumer: Consumer): CouplingInvoker {
+    val invoker = runCatching {
+        val getter = bind(getterFactories, producer.method, producer.baseObject, ::createGetterFactory)
+        val setter = bind(setterFactories, consumer.method, consumer.baseObject, ::createSetterFactory)
+        when {
+            getter is DoubleSupplier && setter is DoubleConsumer -> {
+                CouplingInvoker { setter.accept(getter.asDouble) }
+            }
+            getter is Supplier<*> && setter is ValueConsumer<*> -> {
+                @Suppress("UNCHECKED_CAST")
+                setter as ValueConsumer<Any?>
+                CouplingInvoker { setter.accept(getter.get()) }
+            }
+            else -> null
+        }
+    }.getOrNull() ?: CouplingInvoker { consumer.setValue(producer.value) }
+    return compileVectorInvoker(producer, consumer, invoker) ?: invoker
+}
+
+/**
+ * If both sides of a double array coupling have a vector method (see [org.simbrain.workspace.Producible.vectorMethod]),
+ * returns an invoker that passes the producer's matrix straight to the consumer, skipping the array copy made by the
+ * producer and the matrix created from it by the consumer. Matrices that are not a single column are passed as
+ * arrays using [arrayInvoker].
+ */
+private fun compileVectorInvoker(producer: Producer, consumer: Consumer, arrayInvoker: CouplingInvoker): CouplingInvoker? {
+    val getterMethod = producer.vectorMethod ?: return null
+    val setterMethod = consumer.vectorMethod ?: return null
+    return runCatching {
+        val getter = bind(getterFactories, getterMethod, producer.baseObject, ::createGetterFactory) as Supplier<*>
+        @Suppress("UNCHECKED_CAST")
+        val setter = bind(setterFactories, setterMethod, consumer.baseObject, ::createSetterFactory) as ValueConsumer<Matrix>
+        CouplingInvoker {
+            val vector = getter.get() as Matrix
+            if (vector.ncol() == 1) {
+                setter.accept(vector)
+            } else {
+                arrayInvoker.update()
+            }
+        }
+    }.getOrNull()
+}
+
+/**
+ * Returns a function that calls the producer's getter, compiled as in [compileInvoker]. Used when a produced value has
+ * to be stored before it is consumed.
+ */
+internal fun compileGetter(producer: Producer): () -> Any? {
+    val getter = runCatching { bind(getterFactories, producer.method, producer.baseObject, ::createGetterFactory) }
+    return when (val compiled = getter.getOrNull()) {
+        is DoubleSupplier -> ({ compiled.asDouble })
+        is Supplier<*> -> ({ compiled.get() })
+        else -> ({ producer.value })
+    }
+}
+
+/**
+ * Returns a function that calls the consumer's setter, compiled as in [compileInvoker].
+ */
+internal fun compileSetter(consumer: Consumer): (Any?) -> Unit {
+    val setter = runCatching { bind(setterFactories, consumer.method, consumer.baseObject, ::createSetterFactory) }
+    return when (val compiled = setter.getOrNull()) {
+        is DoubleConsumer -> ({ value -> compiled.accept(value as Double) })
+        is ValueConsumer<*> -> {
+            @Suppress("UNCHECKED_CAST")
+            val typed = compiled as ValueConsumer<Any?>
+            typed::accept
+        }
+        else -> ({ value -> consumer.setValue(value) })
+    }
+}
+
+/**
+ * Returns the functional interface for [method] bound to [baseObject], creating and caching the factory for the
+ * method the first time it is used.
+ */
+private fun bind(
+    factories: ConcurrentHashMap<Method, Result<MethodHandle>>,
+    method: Method,
+    baseObject: Any,
+    createFactory: (Method) -> MethodHandle
+): Any = factories
+    .computeIfAbsent(method) { runCatching { createFactory(it) } }
+    .getOrThrow()
+    .invokeWithArguments(baseObject)
+
+private val lookup = MethodHandles.lookup()
+
+/**
+ * Factories, keyed by getter, that take a base object and return a supplier bound to it.
+ */
+private val getterFactories = ConcurrentHashMap<Method, Result<MethodHandle>>()
+
+/**
+ * Factories, keyed by setter, that take a base object and return a consumer bound to it.
+ */
+private val setterFactories = ConcurrentHashMap<Method, Result<MethodHandle>>()
+
+private fun createGetterFactory(method: Method): MethodHandle {
+    val returnType = method.returnType
+    return if (returnType == Double::class.javaPrimitiveType) {
+        lambdaFactory(method, DoubleSupplier::class.java, "getAsDouble", methodType(returnType), methodType(returnType))
+    } else {
+        lambdaFactory(method, Supplier::class.java, "get", methodType(Any::class.java), methodType(returnType).wrap())
+    }
+}
+
+private fun createSetterFactory(method: Method): MethodHandle {
+    val parameterType = method.parameterTypes[0]
+    val voidType = Void.TYPE
+    return if (parameterType == Double::class.javaPrimitiveType) {
+        lambdaFactory(
+            method, DoubleConsumer::class.java, "accept",
+            methodType(voidType, parameterType), methodType(voidType, parameterType)
+        )
+    } else {
+        lambdaFactory(
+            method, ValueConsumer::class.java, "accept",
+            methodType(voidType, Any::class.java), methodType(voidType, parameterType).wrap().changeReturnType(voidType)
+        )
+    }
+}
+
+/**
+ * Returns a method handle that takes an instance of the method's declaring class and returns an implementation of
+ * [samInterface] that calls [method] on it.
+ */
+private fun lambdaFactory(
+    method: Method,
+    samInterface: Class<*>,
+    samName: String,
+    samType: MethodType,
+    instantiatedType: MethodType
+): MethodHandle {
+    val implementation = lookup.unreflect(method)
+    return LambdaMetafactory.metafactory(
+        lookup,
+        samName,
+        methodType(samInterface, method.declaringClass),
+        samType,
+        implementation,
+        instantiatedType
+    ).target
+}
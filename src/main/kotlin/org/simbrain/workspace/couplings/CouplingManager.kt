@@ -44,6 +44,16 @@ class CouplingManager(val workspace: Workspace) {
      */
     val couplings: List<Coupling> by cachedCouplingList::value
 
+    /**
+     * How couplings are grouped for parallel update. Rebuilt after couplings are added or removed.
+     */
+    private val cachedUpdatePlan = CachedObject {
+        CouplingUpdatePlan(couplings)
+    }
+
+    val updatePlan: CouplingUpdatePlan
+        get() = synchronized(_couplings) { cachedUpdatePlan.value }
+
     /**
      * Couplings associated with an [AttributeContainer]. For faster lookup.
      */
@@ -197,7 +207,7 @@ class CouplingManager(val workspace: Workspace) {
     fun createCoupling(producer: Producer?, consumer: Consumer?, fireEvents: Boolean = true) = Coupling.create(producer, consumer).also {
         synchronized(_couplings) {
             _couplings.add(it)
-            cachedCouplingList.invalidate()
+            invalidateCouplingLists()
             attributeContainerCouplings.getOrPut(it.producer.baseObject) { LinkedHashSet() }.add(it)
             attributeContainerCouplings.getOrPut(it.consumer.baseObject) { LinkedHashSet() }.add(it)
             if (fireEvents) {
@@ -287,12 +297,16 @@ class CouplingManager(val workspace: Workspace) {
     }
 
     /**
-     * Update all couplings by setting the consumers to take the values of their producers.
+     * Update all couplings by setting the consumers to take the values of their producers. Independent couplings are
+     * updated in parallel on the workspace's coroutine context; see [CouplingUpdatePlan].
      */
-    fun updateCouplings() {
-        synchronized(_couplings) {
-            couplings.forEach { it.update() }
-        }
+    suspend fun updateCouplings() {
+        updatePlan.run(workspace.coroutineContext)
+    }
+
+    private fun invalidateCouplingLists() {
+        cachedCouplingList.invalidate()
+        cachedUpdatePlan.invalidate()
     }
 
     /**
@@ -308,7 +322,7 @@ class CouplingManager(val workspace: Workspace) {
     private fun removeCouplingWithoutFiringEvent(coupling: Coupling) {
         synchronized(_couplings) {
             _couplings.remove(coupling)
-            cachedCouplingList.invalidate()
+            invalidateCouplingLists()
             attributeContainerCouplings[coupling.producer.baseObject]?.let {
                 it.remove(coupling)
                 if (it.isEmpty()) {
@@ -328,7 +342,7 @@ class CouplingManager(val workspace: Workspace) {
         attributeContainerCouplings[attributeContainer]?.let {
             it.forEach { coupling ->
                 _couplings.remove(coupling)
-                cachedCouplingList.invalidate()
+                invalidateCouplingLists()
                 if (coupling.consumer.baseObject !== attributeContainer) {
                     attributeContainerCouplings[coupling.consumer.baseObject]?.remove(coupling)
                 }
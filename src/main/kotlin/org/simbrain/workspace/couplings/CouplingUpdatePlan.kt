@@ -0,0 +1,106 @@
+package org.simbrain.workspace.couplings
+
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.launch
+import org.simbrain.workspace.AttributeContainer
+import kotlin.coroutines.CoroutineContext
+
+/**
+ * Minimum number of couplings updated by each parallel task in a [CouplingUpdatePlan]. Below this, launching a
+ * coroutine costs more than the updates it runs.
+ */
+const val MIN_COUPLINGS_PER_TASK = 256
+
+/**
+ * The order in which a list of couplings is updated, worked out once so that [CouplingManager.updateCouplings] can
+ * update independent couplings in parallel.
+ *
+ * Couplings are put in the same group when they write to the same [AttributeContainer], or when one reads from a
+ * container that the other writes to. Within a group couplings are updated one by one in their original order, so
+ * many-to-one couplings (e.g. several producers adding to one neuron's input) and chains (one coupling reading what
+ * another has just written) behave exactly as when every coupling is updated in order. Couplings in different groups
+ * write to different containers and never read what the other writes, so groups can be updated at the same time.
+ *
+ * Groups are packed, in order, into [tasks] of at least [minTaskSize] couplings, and each task is run as one
+ * coroutine.
+ */
+class CouplingUpdatePlan(couplings: List<Coupling>, val minTaskSize: Int = MIN_COUPLINGS_PER_TASK) {
+
+    /**
+     * Couplings that must be updated one after another, in update order.
+     */
+    val groups: List<List<Coupling>>
+
+    /**
+     * Groups concatenated into units of parallel work.
+     */
+    val tasks: List<List<Coupling>>
+
+    init {
+        val parents = HashMap<AttributeContainer, AttributeContainer>()
+
+        fun find(container: AttributeContainer): AttributeContainer {
+            var root = container
+            while (true) {
+                val parent = parents[root] ?: return root
+                root = parent
+            }
+        }
+
+        fun union(a: AttributeContainer, b: AttributeContainer) {
+            val rootA = find(a)
+            val rootB = find(b)
+            if (rootA !== rootB) {
+                parents[rootA] = rootB
+            }
+        }
+
+        // Only reading a container that some coupling writes to creates a dependency
+        val written = couplings.mapTo(HashSet()) { it.consumer.baseObject }
+        couplings.forEach {
+            if (it.producer.baseObject in written) {
+                union(it.producer.baseObject, it.consumer.baseObject)
+            }
+        }
+
+        val groupsByRoot = LinkedHashMap<AttributeContainer, MutableList<Coupling>>()
+        couplings.forEach {
+            groupsByRoot.getOrPut(find(it.consumer.baseObject)) { ArrayList() }.add(it)
+        }
+        groups = groupsByRoot.values.toList()
+
+        val packed = ArrayList<List<Coupling>>()
+        var current = ArrayList<Coupling>()
+        groups.forEach { group ->
+            current.addAll(group)
+            if (current.size >= minTaskSize) {
+                packed.add(current)
+                current = ArrayList()
+            }
+        }
+        if (current.isNotEmpty()) {
+            packed.add(current)
+        }
+        tasks = packed
+    }
+
+    /**
+     * Update every coupling. When there is more than one task, each is launched in [context] and this returns when
+     * all are done. Any job in [context] is ignored, so the tasks are always children of the caller.
+     */
+    suspend fun run(context: CoroutineContext) {
+        if (tasks.size <= 1) {
+            tasks.firstOrNull()?.forEach { it.update() }
+            return
+        }
+        val taskContext = context.minusKey(Job)
+        coroutineScope {
+            tasks.forEach { task ->
+                launch(taskContext) {
+                    task.forEach { it.update() }
+                }
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.simbrain.workspace.serialization
 
 import org.simbrain.workspace.WorkspaceComponent
 import java.io.InputStream
+import java.util.concurrent.ConcurrentHashMap
 import kotlin.reflect.full.companionObject
 import kotlin.reflect.full.companionObjectInstance
 import kotlin.reflect.full.functions
@@ -10,9 +11,9 @@ class WorkspaceComponentDeserializer {
 
 
     /**
-     * A map used to retrieve workspace components given their uris.
+     * A map used to retrieve workspace components given their uris. Components may be deserialized in parallel.
      */
-    private val componentKeys: MutableMap<String, WorkspaceComponent> = HashMap()
+    private val componentKeys: MutableMap<String, WorkspaceComponent> = ConcurrentHashMap()
 
     /**
      * Returns the workspace component associated with the given uri.
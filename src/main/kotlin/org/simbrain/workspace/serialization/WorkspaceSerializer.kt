@@ -1,13 +1,22 @@
 package org.simbrain.workspace.serialization
 
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import org.simbrain.util.BinaryArchiveEntries
 import org.simbrain.util.getSimbrainXStream
 import org.simbrain.workspace.Workspace
 import org.simbrain.workspace.WorkspaceComponent
 import org.simbrain.workspace.couplings.Coupling
+import org.simbrain.workspace.gui.DesktopComponent
 import org.simbrain.workspace.gui.SimbrainDesktop.getDesktopComponent
 import java.awt.Rectangle
 import java.io.*
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
 import java.util.zip.ZipEntry
 import java.util.zip.ZipInputStream
 import java.util.zip.ZipOutputStream
@@ -18,6 +27,11 @@ class WorkspaceSerializer(val workspace: Workspace) {
     /**
      * Serializes the workspace to a zip compressed stream.
      *
+     * The archive lists "contents.xml" first, so that [deserialize] can open each component as soon as its entries
+     * have been read. Components are converted to xml in parallel, and each is written as soon as it and the
+     * components before it are done, so only a few components' xml is held in memory at a time. Large double arrays
+     * (see [BinaryArchiveEntries]) are written as binary entries just before the xml of the component they belong to.
+     *
      * @param output The output stream to write to.
      * @throws IOException If there is an IO error.
      */
@@ -39,79 +53,112 @@ class WorkspaceSerializer(val workspace: Workspace) {
         // Currently sorts components by a serialization priority
         workspace.preSerializationInit()
 
-        serializeComponents(serializer, archive, zipStream, headless)
+        val archived = archiveComponents(archive, headless)
         serializeCouplings(archive)
 
         // serializeUpdateActions(archive);
-        val entry = ZipEntry("contents.xml")
+        val entry = ZipEntry(CONTENTS_FILE)
         zipStream.putNextEntry(entry)
         archive.toXml(zipStream)
+
+        serializeComponents(serializer, archived, zipStream)
         zipStream.finish()
     }
 
     /**
-     * Serializes all the components to the given archive and zipstream.
+     * A component converted to xml, with its binary entries, ready to be written to the archive.
+     */
+    private class SerializedComponent(
+        val archivedComponent: ArchivedWorkspaceComponent,
+        val desktopComponent: DesktopComponent<*>?,
+        val xml: ByteArray,
+        val binaryEntries: BinaryArchiveEntries
+    )
+
+    /**
+     * Adds all the components to the archive.
+     *
+     * @param archive The archive contents to update.
+     * @return each component with its archived component and, unless [headless], its desktop component
+     */
+    private fun archiveComponents(
+        archive: ArchivedWorkspace,
+        headless: Boolean
+    ) = workspace.componentList.map { component ->
+        val archiveComp = archive.addComponent(component)
+        val desktopComponent = if (headless) null else getDesktopComponent(component)
+        // Makes it possible to save a non-GUI simulation
+        desktopComponent?.let { archiveComp.addDesktopComponent(it) }
+        Triple(component, archiveComp, desktopComponent)
+    }
+
+    /**
+     * Converts the components to xml in parallel and writes them to the zip stream in order. At most
+     * [MAX_PENDING_COMPONENTS] conversions are started ahead of the component being written.
      *
      * @param serializer The serializer for the components.
-     * @param archive    The archive contents to update.
+     * @param archived   The components with their archived and desktop components.
      * @param zipStream  The zipstream to write to.
-     * @throws IOException If there is an IO error.
      */
-    @Throws(IOException::class)
     private fun serializeComponents(
         serializer: WorkspaceComponentSerializer,
-        archive: ArchivedWorkspace,
-        zipStream: ZipOutputStream,
-        headless: Boolean
-    ) {
-        val components = sortComponentsByPriority()
-        for (component in workspace.componentList) {
-            serializeComponent(serializer, archive, component, zipStream, headless)
+        archived: List<Triple<WorkspaceComponent, ArchivedWorkspaceComponent, DesktopComponent<*>?>>,
+        zipStream: ZipOutputStream
+    ) = runBlocking {
+        val pending = Channel<Deferred<SerializedComponent>>(MAX_PENDING_COMPONENTS)
+        launch {
+            archived.forEach { (component, archiveComp, desktopComponent) ->
+                pending.send(async(Dispatchers.Default) {
+                    val binaryEntries = BinaryArchiveEntries(binaryEntryPrefix(archiveComp))
+                    val xml = ByteArrayOutputStream()
+                    binaryEntries.use { serializer.serializeComponent(component, xml) }
+                    SerializedComponent(archiveComp, desktopComponent, xml.toByteArray(), binaryEntries)
+                })
+            }
+            pending.close()
+        }
+        for (serialized in pending) {
+            writeComponent(serialized.await(), zipStream)
         }
-    }
-
-    private fun sortComponentsByPriority(): List<WorkspaceComponent> {
-        val components: MutableList<WorkspaceComponent> = ArrayList()
-        components.addAll(workspace.componentList)
-        components.sortWith { c1, c2 -> c1.serializePriority.compareTo(c2.serializePriority) }
-        return components
     }
 
     /**
-     * Serialize one component to the zip stream
+     * Write one component to the zip stream: its binary entries, its xml, and its desktop component.
      *
-     * @param serializer The serializer for the components.
-     * @param archive    The archive contents to update.
-     * @param component  the component to serialize
+     * @param serialized the component to write
      * @param zipStream  The zipstream to write to.
      */
-    private fun serializeComponent(
-        serializer: WorkspaceComponentSerializer,
-        archive: ArchivedWorkspace,
-        component: WorkspaceComponent,
-        zipStream: ZipOutputStream,
-        headless: Boolean
-    ) {
-        val archiveComp = archive.addComponent(component)
-        var entry: ZipEntry? = ZipEntry(archiveComp.getUri())
+    private fun writeComponent(serialized: SerializedComponent, zipStream: ZipOutputStream) {
         try {
-            zipStream.putNextEntry(entry)
-            serializer.serializeComponent(component, zipStream)
-            if (!headless) {
-                val desktopComponent = getDesktopComponent(component)
-                // Makes it possible to save a non-GUI simulation
-                if (desktopComponent != null) {
-                    val dc = archiveComp.addDesktopComponent(desktopComponent)
-                    entry = ZipEntry(dc.uri)
-                    zipStream.putNextEntry(entry)
-                    desktopComponent.save(zipStream)
-                }
+            serialized.binaryEntries.entries.forEach { (name, array) ->
+                zipStream.putNextEntry(ZipEntry(name))
+                BinaryArchiveEntries.writeDoubles(array, zipStream)
+            }
+            zipStream.putNextEntry(ZipEntry(serialized.archivedComponent.getUri()))
+            zipStream.write(serialized.xml)
+            if (serialized.desktopComponent != null) {
+                zipStream.putNextEntry(ZipEntry(serialized.archivedComponent.desktopComponent.uri))
+                serialized.desktopComponent.save(zipStream)
             }
         } catch (ex: IOException) {
             ex.printStackTrace()
         }
     }
 
+    /**
+     * Binary entries of a component are named after its uri, e.g. "data/1_Network1/0.bin" for
+     * "components/1_Network1.xml".
+     */
+    private fun binaryEntryPrefix(archivedComponent: ArchivedWorkspaceComponent) =
+        "data/" + archivedComponent.getUri().substringAfter('/').substringBeforeLast('.') + "/"
+
+    private fun sortComponentsByPriority(): List<WorkspaceComponent> {
+        val components: MutableList<WorkspaceComponent> = ArrayList()
+        components.addAll(workspace.componentList)
+        components.sortWith { c1, c2 -> c1.serializePriority.compareTo(c2.serializePriority) }
+        return components
+    }
+
     /**
      * Serialize couplings.
      *
@@ -168,95 +215,69 @@ class WorkspaceSerializer(val workspace: Workspace) {
     /**
      * Creates a workspace from a zip compressed input stream.
      *
+     * Entries are read one at a time. Components are opened in parallel as soon as their entries and "contents.xml"
+     * have been read, and are then added to the workspace in archive order. Archives written before "contents.xml"
+     * came first are also supported; their component entries are kept until "contents.xml" is reached.
+     *
      * @param stream The stream to read from. This is expected to be zip compressed.
      * @throws IOException if an IO error occurs.
      */
     @Throws(IOException::class)
     fun deserialize(stream: InputStream) {
-        val byteArrays = processInputStream(stream)
-        val archive =
-            ArchivedWorkspace.xstream().fromXML(ByteArrayInputStream(byteArrays["contents.xml"])) as ArchivedWorkspace
-
         val deserializer = WorkspaceComponentDeserializer()
-        deserializeComponents(archive, deserializer, byteArrays)
+        val zip = ZipInputStream(BufferedInputStream(stream))
 
-        deserializeCouplings(archive)
-        // deserializeUpdateActions(archive, deserializer);
-        deserializeWorkspaceParameters(archive)
-    }
+        // Entries are stored by their name relative to contents.xml once it is known
+        val entries = HashMap<String, ByteArray>()
+        val binaryEntries = BinaryArchiveEntries(arrays = ConcurrentHashMap())
+        var archive: ArchivedWorkspace? = null
+        var contentsPath = ""
 
-    @Throws(IOException::class)
-    private fun processInputStream(stream: InputStream): Map<String, ByteArray?> {
-        // Populate the byte stream BUFFER_SIZE at a time and create a zip input
-        // stream (currently 1 kb at a time).
-        val bytes = ByteArrayOutputStream()
-        val buffer = ByteArray(BUFFER_SIZE)
-        var read: Int
-        while ((stream.read(buffer).also { read = it }) >= 0) {
-            bytes.write(buffer, 0, read)
-        }
-        var zip = ZipInputStream(ByteArrayInputStream(bytes.toByteArray()))
-
-        // Populate a map from zip entries (strings containing path+file info in
-        // zip archive) to the associated data
-        val byteArrays: MutableMap<String, ByteArray> = HashMap()
-        var entry = zip.nextEntry
-        // Initialize byte arrays
-        var next: ZipEntry?
-        while (entry != null) {
-            next = zip.nextEntry
-            byteArrays[entry.name] = ByteArray(entry.size.toInt())
-            entry = next
-        }
-        zip = ZipInputStream(ByteArrayInputStream(bytes.toByteArray()))
-        // Populate byte arrays
-        while ((zip.nextEntry.also { entry = it }) != null) {
-            val data = byteArrays[entry!!.name]!!
-            read(zip, data)
-        }
+        runBlocking {
+            val opened = HashMap<ArchivedWorkspaceComponent, Deferred<Result<WorkspaceComponent>>>()
 
-        // Find the contents.xml file and set the zip entries relative to that
-        val zipEntries: Set<String> = HashSet(byteArrays.keys)
-        val contentsFile = "contents.xml"
-        var contentsPath = ""
-        for (entryName in zipEntries) {
-            if (entryName.endsWith(contentsFile)) {
-                contentsPath = entryName.substring(0, entryName.length - contentsFile.length)
+            fun openReadyComponents() {
+                archive?.archivedComponents?.forEach { archivedComponent ->
+                    if (archivedComponent in opened) return@forEach
+                    val xml = entries.remove(archivedComponent.getUri()) ?: return@forEach
+                    opened[archivedComponent] = async(Dispatchers.Default) {
+                        runCatching {
+                            binaryEntries.use {
+                                deserializer.deserializeWorkspaceComponent(archivedComponent, ByteArrayInputStream(xml))
+                            }
+                        }.also {
+                            // The opened component holds the arrays it uses, so the map need not keep them
+                            binaryEntries.removeAll(binaryEntryPrefix(archivedComponent))
+                        }
+                    }
+                }
             }
-        }
 
-        // Remove the contents path from all entries that have it
-        if (!contentsPath.isEmpty()) {
-            for (entryName in zipEntries) {
-                if (entryName.startsWith(contentsPath)) {
-                    byteArrays[entryName.replace(contentsPath, "")] = byteArrays[entryName]!!
-                    byteArrays.remove(entryName)
+            var entry = zip.nextEntry
+            while (entry != null) {
+                val name = entry.name
+                if (name.endsWith(CONTENTS_FILE)) {
+                    contentsPath = name.substring(0, name.length - CONTENTS_FILE.length)
+                    archive = ArchivedWorkspace.xstream().fromXML(ByteArrayInputStream(zip.readAllBytes())) as ArchivedWorkspace
+                    // Entries read before contents.xml, as in older archives
+                    entries.keys.filter { contentsPath.isNotEmpty() && it.startsWith(contentsPath) }.forEach {
+                        entries[it.removePrefix(contentsPath)] = entries.remove(it)!!
+                    }
+                } else if (name.endsWith(BinaryArchiveEntries.EXTENSION)) {
+                    binaryEntries.put(name.removePrefix(contentsPath), BinaryArchiveEntries.readDoubles(zip))
+                } else {
+                    entries[name.removePrefix(contentsPath)] = zip.readAllBytes()
                 }
+                openReadyComponents()
+                entry = zip.nextEntry
             }
-        }
-        return byteArrays
-    }
 
-    private fun deserializeComponents(
-        archive: ArchivedWorkspace,
-        deserializer: WorkspaceComponentDeserializer,
-        byteArrays: Map<String, ByteArray?>
-    ) {
-        if (archive.archivedComponents != null) {
-            for (archivedComponent in archive.archivedComponents) {
+            val contents = archive ?: throw IOException("Workspace archive has no $CONTENTS_FILE")
+            contents.archivedComponents?.forEach { archivedComponent ->
                 try {
-                    val wc = deserializer.deserializeWorkspaceComponent(
-                        archivedComponent,
-                        ByteArrayInputStream(byteArrays[archivedComponent.getUri()])
-                    )
-                    wc.postOpenInit(workspace)
-                    workspace.addWorkspaceComponent(wc)
-                    if (archivedComponent.desktopComponent != null) {
-                        val bounds =
-                            getSimbrainXStream().fromXML(ByteArrayInputStream(byteArrays[archivedComponent.desktopComponent.uri])) as Rectangle
-                        val desktopComponent = getDesktopComponent(wc)
-                        desktopComponent.parentFrame.bounds = bounds
-                    }
+                    val wc = opened[archivedComponent]?.await()?.getOrThrow()
+                        ?: throw IOException("Missing archive entry ${archivedComponent.getUri()}")
+                    addComponent(wc, archivedComponent, entries)
                 } catch (ex: Exception) {
                     ex.printStackTrace()
                     val message = String.format("Failed to deserialize component %s.", archivedComponent.name)
@@ -264,6 +285,29 @@ class WorkspaceSerializer(val workspace: Workspace) {
                 }
             }
         }
+
+        val contents = archive!!
+        deserializeCouplings(contents)
+        // deserializeUpdateActions(archive, deserializer);
+        deserializeWorkspaceParameters(contents)
+    }
+
+    /**
+     * Add an opened component to the workspace and restore the bounds of its desktop component.
+     */
+    private fun addComponent(
+        wc: WorkspaceComponent,
+        archivedComponent: ArchivedWorkspaceComponent,
+        entries: Map<String, ByteArray>
+    ) {
+        wc.postOpenInit(workspace)
+        workspace.addWorkspaceComponent(wc)
+        if (archivedComponent.desktopComponent != null) {
+            val bounds =
+                getSimbrainXStream().fromXML(ByteArrayInputStream(entries[archivedComponent.desktopComponent.uri])) as Rectangle
+            val desktopComponent = getDesktopComponent(wc)
+            desktopComponent.parentFrame.bounds = bounds
+        }
     }
 
     private fun deserializeCouplings(archive: ArchivedWorkspace) {
@@ -350,4 +394,11 @@ class WorkspaceSerializer(val workspace: Workspace) {
 
 }
 
-const val BUFFER_SIZE = 1024
\ No newline at end of file
+const val BUFFER_SIZE = 1024
+
+private const val CONTENTS_FILE = "contents.xml"
+
+/**
+ * Number of components that can be converted to xml ahead of the one being written to the archive.
+ */
+private val MAX_PENDING_COMPONENTS = Runtime.getRuntime().availableProcessors()
\ No newline at end of file
@@ -0,0 +1,174 @@
+package org.simbrain.workspace.updater
+
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import org.simbrain.workspace.AttributeContainer
+import org.simbrain.workspace.Producer
+import org.simbrain.workspace.WorkspaceComponent
+import org.simbrain.workspace.couplings.compileGetter
+import org.simbrain.workspace.couplings.compileSetter
+import smile.math.matrix.Matrix
+import java.util.*
+
+/**
+ * Runs the default workspace update ([UpdateAllAction]) without a barrier between iterations, so that a fast
+ * component does not wait for unrelated slow components to finish before starting its next update.
+ *
+ * Each component is a stage that repeatedly applies its incoming couplings and then updates. A stage can start
+ * iteration t + 1 as soon as every component it consumes from has finished iteration t, even if other components are
+ * still working on iteration t. To make this possible, each stage copies the values of its producers into a buffer
+ * when it finishes an update, and couplings read from that buffer rather than from the producer. There are two
+ * buffers, one for the previous iteration and one for the current one, so a stage is also held back if a component
+ * consuming from it has not yet read its previous values.
+ *
+ * Couplings see the values their producers had at the end of the previous iteration, as in the strict update. The
+ * results are the same as the strict update unless one coupling consumes a value that another coupling then produces
+ * in the same iteration.
+ *
+ * Arrays and matrices are copied when buffered; other produced objects are stored by reference, so producers of
+ * mutable objects should return copies.
+ */
+class PipelinedUpdate(private val updater: WorkspaceUpdater) {
+
+    private inner class Stage(val component: WorkspaceComponent) {
+
+        /**
+         * Setters of couplings that consume into this component, with the buffer slot each reads from, in coupling
+         * order.
+         */
+        val incoming = ArrayList<Pair<(Any?) -> Unit, Int>>()
+
+        /**
+         * Getters of this component's coupled producers, with the buffer slot each writes to.
+         */
+        val outgoing = ArrayList<Pair<() -> Any?, Int>>()
+
+        val upstream = LinkedHashSet<Stage>()
+
+        val downstream = LinkedHashSet<Stage>()
+
+        /**
+         * Last iteration whose couplings have been applied to this component.
+         */
+        val applied = MutableStateFlow(0)
+
+        /**
+         * Last iteration this component has finished updating and buffering.
+         */
+        val done = MutableStateFlow(0)
+
+        fun buffer(iteration: Int) {
+            val buffer = buffers[iteration % 2]
+            outgoing.forEach { (getter, slot) -> buffer[slot] = copyOf(getter()) }
+        }
+
+        suspend fun run(iterations: Int) {
+            for (t in 1..iterations) {
+                upstream.forEach { stage -> stage.done.first { it >= t - 1 } }
+                downstream.forEach { stage -> stage.applied.first { it >= t - 1 } }
+                val buffer = buffers[(t - 1) % 2]
+                incoming.forEach { (setter, slot) -> setter(buffer[slot]) }
+                applied.value = t
+                couplingsApplied()
+                if (component.updateOn) {
+                    PerformanceMonitor.record("Updating Component ${component.name}") {
+                        component.update()
+                    }
+                }
+                buffer(t)
+                done.value = t
+                componentFinished()
+            }
+        }
+    }
+
+    private var buffers = Array(2) { arrayOfNulls<Any?>(0) }
+
+    private var stages = listOf<Stage>()
+
+    private val lock = Any()
+
+    private var couplingsReported = 0
+
+    private var iterationsReported = 0
+
+    /**
+     * Run [iterations] iterations. Returns false without running anything if some coupling's producer or consumer
+     * does not belong to a workspace component, in which case the strict update should be used.
+     */
+    suspend fun run(iterations: Int): Boolean {
+        if (!plan()) {
+            return false
+        }
+        stages.forEach { it.buffer(0) }
+        withContext(updater.workspace.coroutineContext) {
+            stages.forEach { stage ->
+                launch {
+                    stage.run(iterations)
+                }
+            }
+        }
+        return true
+    }
+
+    private fun plan(): Boolean {
+        val components = updater.components
+        val stagesByContainer = IdentityHashMap<AttributeContainer, Stage>()
+        val newStages = components.map { component ->
+            Stage(component).also { stage ->
+                component.attributeContainers.forEach { stagesByContainer[it] = stage }
+            }
+        }
+
+        val slots = LinkedHashMap<Producer, Int>()
+        for (coupling in updater.workspace.couplingManager.couplings) {
+            val source = stagesByContainer[coupling.producer.baseObject] ?: return false
+            val target = stagesByContainer[coupling.consumer.baseObject] ?: return false
+            val slot = slots.getOrPut(coupling.producer) {
+                slots.size.also { source.outgoing.add(compileGetter(coupling.producer) to it) }
+            }
+            target.incoming.add(compileSetter(coupling.consumer) to slot)
+            target.upstream.add(source)
+            source.downstream.add(target)
+        }
+
+        stages = newStages
+        buffers = Array(2) { arrayOfNulls(slots.size) }
+        couplingsReported = 0
+        iterationsReported = 0
+        return true
+    }
+
+    private fun copyOf(value: Any?): Any? = when (value) {
+        is DoubleArray -> value.copyOf()
+        is Matrix -> value.clone()
+        else -> value
+    }
+
+    /**
+     * Fire [org.simbrain.workspace.events.WorkspaceUpdaterEvents.couplingsUpdates] once all couplings of an iteration
+     * are applied.
+     */
+    private fun couplingsApplied() = synchronized(lock) {
+        val applied = stages.minOf { it.applied.value }
+        while (couplingsReported < applied) {
+            couplingsReported++
+            updater.events.couplingsUpdates.fire()
+        }
+    }
+
+    /**
+     * Advance the workspace time and fire [org.simbrain.workspace.events.WorkspaceUpdaterEvents.workspaceUpdated]
+     * once every component has finished an iteration.
+     */
+    private fun componentFinished() = synchronized(lock) {
+        val finished = stages.minOf { it.done.value }
+        while (iterationsReported < finished) {
+            iterationsReported++
+            updater.time++
+            updater.events.workspaceUpdated.fire()
+        }
+    }
+}
@@ -46,6 +46,18 @@ class WorkspaceUpdater(val workspace: Workspace) {
      */
     val updateManager: UpdateActionManager = UpdateActionManager(this)
 
+    /**
+     * If true, and the update manager only contains the default [UpdateAllAction], components are updated as a
+     * pipeline rather than in lock step. See [PipelinedUpdate].
+     */
+    var isPipelined = false
+
+    private val pipelinedUpdate = PipelinedUpdate(this)
+
+    private val canPipeline
+        get() = isPipelined && updateManager.nonRemovableActions.isEmpty() &&
+                updateManager.actionList.singleOrNull() is UpdateAllAction
+
     /**
      * Reset time to 0.
      */
@@ -72,7 +84,9 @@ class WorkspaceUpdater(val workspace: Workspace) {
         events.runStarted.fire().await()
         withContext(workspace.coroutineContext) {
             while (isRunning) {
-                doUpdate()
+                if (!canPipeline || !pipelinedUpdate.run(PIPELINED_RUN_ITERATIONS)) {
+                    doUpdate()
+                }
             }
         }
         isRunning = false
@@ -132,8 +146,10 @@ class WorkspaceUpdater(val workspace: Workspace) {
             wc.isRunning = true
         }
         events.runStarted.fire().await()
-        repeat(numIterations) {
-            doUpdate()
+        if (!canPipeline || !pipelinedUpdate.run(numIterations)) {
+            repeat(numIterations) {
+                doUpdate()
+            }
         }
         isRunning = false
         finishingTask()
@@ -200,4 +216,11 @@ class WorkspaceUpdater(val workspace: Workspace) {
             return components
         }
 
+    companion object {
+        /**
+         * Iterations run by each pipelined update while the workspace is running. Stopping the workspace takes effect
+         * at the end of a batch, so this is kept small.
+         */
+        const val PIPELINED_RUN_ITERATIONS = 10
+    }
 }
@@ -63,6 +63,16 @@ class WeightMatrixTest {
         Assertions.assertArrayEquals(doubleArrayOf(5.0, 11.0), wm.getSummedPSRs(), 0.0)
     }
 
+    @Test
+    fun testPsrMatrixBuiltOnDemand() {
+        na1.setActivations(doubleArrayOf(1.0, 2.0))
+        wm.setWeights(doubleArrayOf(1.0, 2.0, 3.0, 4.0))
+        net.update()
+        Assertions.assertArrayEquals(doubleArrayOf(1.0, 4.0), wm.psrMatrix.row(0), 0.0)
+        Assertions.assertArrayEquals(doubleArrayOf(3.0, 8.0), wm.psrMatrix.row(1), 0.0)
+        Assertions.assertArrayEquals(wm.psrMatrix.rowSums(), wm.getSummedPSRs(), 0.0)
+    }
+
 
     @Test
     fun testArrayToArray() {
@@ -102,6 +112,20 @@ class WeightMatrixTest {
         Assertions.assertArrayEquals(doubleArrayOf(0.0, 0.0), ng.activationArray, 0.0)
     }
 
+    @Test
+    fun testExcitatoryAndInhibitoryInputs() {
+        na1.setActivations(doubleArrayOf(1.0, 2.0))
+        wm.setWeights(doubleArrayOf(1.0, -1.0, -2.0, 3.0))
+        with(net) { wm.updatePSR() }
+        Assertions.assertArrayEquals(doubleArrayOf(1.0, 6.0), na2.excitatoryInputs, 0.0)
+        Assertions.assertArrayEquals(doubleArrayOf(-2.0, -2.0), na2.inhibitoryInputs, 0.0)
+
+        // Weights changed directly, e.g. by a learning rule, are reflected without any mask update
+        wm.weightMatrix[0, 1] = 1.0
+        Assertions.assertArrayEquals(doubleArrayOf(3.0, 6.0), na2.excitatoryInputs, 0.0)
+        Assertions.assertArrayEquals(doubleArrayOf(0.0, -2.0), na2.inhibitoryInputs, 0.0)
+    }
+
     // @Test
     fun large_matrix_multiplication() {
         val net = Network()
@@ -0,0 +1,65 @@
+package org.simbrain.network.connections
+
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.simbrain.network.core.Neuron
+import java.util.concurrent.ForkJoinPool
+
+class ConnectionGeneratorTest {
+
+    private fun generate(seed: Long) = generateConnections(500, 300, seed) { _, _, random ->
+        if (random.nextDouble() < .1) random.nextDouble() else null
+    }
+
+    private fun generateOnThreads(threads: Int, seed: Long): ConnectionTriples {
+        val pool = ForkJoinPool(threads)
+        try {
+            return pool.submit<ConnectionTriples> { generate(seed) }.get()
+        } finally {
+            pool.shutdown()
+        }
+    }
+
+    @Test
+    fun `same seed gives same connections regardless of thread count`() {
+        val single = generateOnThreads(1, 42)
+        val many = generateOnThreads(8, 42)
+        assertArrayEquals(single.sourceIndices, many.sourceIndices)
+        assertArrayEquals(single.targetIndices, many.targetIndices)
+        assertArrayEquals(single.strengths, many.strengths)
+        assertTrue(single.size in 13_000..17_000)
+    }
+
+    @Test
+    fun `different seeds give different connections`() {
+        assertFalse(generate(1).strengths.contentEquals(generate(2).strengths))
+    }
+
+    @Test
+    fun `connections are ordered by source`() {
+        val triples = generate(3)
+        for (k in 1 until triples.size) {
+            assertTrue(triples.sourceIndices[k - 1] <= triples.sourceIndices[k])
+        }
+    }
+
+    @Test
+    fun `radial gaussian is reproducible for a seed`() {
+        fun connect(): List<Pair<Int, Int>> {
+            val neurons = List(200) { Neuron().apply { x = (it % 20) * 10.0; y = (it / 20) * 10.0 } }
+            return RadialGaussian(lambda = 30.0, seed = 7).connectNeurons(neurons, neurons).map {
+                neurons.indexOf(it.source) to neurons.indexOf(it.target)
+            }
+        }
+        val first = connect()
+        assertTrue(first.isNotEmpty())
+        assertEquals(first, connect())
+    }
+
+    @Test
+    fun `all to all skips self connections`() {
+        val neurons = List(10) { Neuron() }
+        assertEquals(90, createAllToAllSynapses(neurons, neurons).size)
+        assertEquals(100, createAllToAllSynapses(neurons, neurons, allowSelfConnection = true).size)
+    }
+}
@@ -177,4 +177,105 @@ class NetworkTest {
         // (2 in neuron collection are free neurons)
         Assertions.assertEquals(22, net.flatNeuronList.size)
     }
-}
\ No newline at end of file
+
+    @Test
+    fun testFlatListsAreCachedAndRefreshed() {
+        val neurons = net.flatNeuronList
+        Assertions.assertSame(neurons, net.flatNeuronList)
+
+        val n3 = Neuron()
+        net.addNetworkModel(n3)
+        Assertions.assertEquals(23, net.flatNeuronList.size)
+        Assertions.assertTrue(n3 in net.flatNeuronList)
+
+        runBlocking { n3.delete() }
+        Assertions.assertEquals(22, net.flatNeuronList.size)
+    }
+
+    @Test
+    fun testFlatNeuronListFollowsGroupMembership() {
+        val removed = ng1.getNeuron(0)
+        Assertions.assertTrue(removed in net.flatNeuronList)
+        runBlocking { removed.delete() }
+        Assertions.assertEquals(21, net.flatNeuronList.size)
+        Assertions.assertFalse(removed in net.flatNeuronList)
+
+        ng2.removeNeuron(ng2.getNeuron(0))
+        Assertions.assertEquals(20, net.flatNeuronList.size)
+
+        val synapse = sg1.synapses.first()
+        Assertions.assertTrue(synapse in net.flatSynapseList)
+        sg1.removeSynapse(synapse)
+        Assertions.assertFalse(synapse in net.flatSynapseList)
+        sg1.addSynapse(synapse)
+        Assertions.assertTrue(synapse in net.flatSynapseList)
+    }
+
+    @Test
+    fun testFlatListsAreReadOnly() {
+        Assertions.assertThrows(UnsupportedOperationException::class.java) {
+            (net.flatNeuronList as MutableList<Neuron>).clear()
+        }
+    }
+
+    @Test
+    fun testBatchAdd() = runBlocking {
+        val neurons = List(50) { Neuron() }
+        val synapses = neurons.zipWithNext { a, b -> Synapse(a, b) }
+        var batchedEvents = 0
+        var singleEvents = 0
+        net.events.modelsAdded.on(wait = true) { batchedEvents++ }
+        net.events.modelAdded.on(wait = true) { singleEvents++ }
+        net.batch {
+            addAll(neurons)
+            addAll(synapses)
+        }.await()
+        Assertions.assertEquals(1, batchedEvents)
+        Assertions.assertEquals(0, singleEvents)
+        Assertions.assertEquals(52, net.freeNeurons.size)
+        Assertions.assertEquals(50, net.freeSynapses.size)
+        Assertions.assertEquals(72, net.flatNeuronList.size)
+        val ids = (net.freeNeurons + net.freeSynapses).map { it.id }
+        Assertions.assertEquals(ids.size, ids.toSet().size)
+    }
+
+    @Test
+    fun testModelSetsCanBeIteratedWhileAdding() {
+        val before = net.freeNeurons
+        for (neuron in before) {
+            net.addNetworkModel(Neuron())
+        }
+        Assertions.assertEquals(2, before.size)
+        Assertions.assertEquals(4, net.freeNeurons.size)
+    }
+
+    @Test
+    fun testCopyPreservesIdsWeightsAndFanInOut() {
+        wm1.setWeights(DoubleArray(100) { it * 0.5 })
+        na1.setActivations(DoubleArray(10) { it.toDouble() })
+        s1.strength = 2.5
+
+        val copy = net.copy()
+
+        val neurons = copy.getModels(Neuron::class.java).associateBy { it.id }
+        val copiedN1 = neurons.getValue(n1.id)
+        val copiedN2 = neurons.getValue(n2.id)
+        val copiedS1 = copy.getModels(Synapse::class.java).first { it.id == s1.id }
+        Assertions.assertNotSame(n1, copiedN1)
+        Assertions.assertEquals(2.5, copiedS1.strength)
+        Assertions.assertSame(copiedS1, copiedN1.fanOut[copiedN2])
+        Assertions.assertSame(copiedS1, copiedN2.fanIn.single())
+
+        val copiedWm1 = copy.getModels(WeightMatrix::class.java).first { it.id == wm1.id }
+        Assertions.assertArrayEquals(wm1.weights, copiedWm1.weights)
+        Assertions.assertEquals(na1.id, copiedWm1.source.id)
+        val copiedNa1 = copy.getModels(NeuronArray::class.java).first { it.id == na1.id }
+        Assertions.assertArrayEquals(na1.activationArray, copiedNa1.activationArray)
+
+        // Copies are independent of the original and of each other
+        copiedWm1.setWeights(DoubleArray(100))
+        Assertions.assertEquals(0.5, wm1.weights[1])
+        val snapshot = net.snapshot()
+        Assertions.assertNotSame(networkFromSnapshot(snapshot), networkFromSnapshot(snapshot))
+    }
+}
@@ -0,0 +1,102 @@
+package org.simbrain.network.core
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import org.simbrain.util.layerNorm
+import org.simbrain.util.relu
+import org.simbrain.util.stats.distributions.NormalDistribution
+import smile.math.matrix.Matrix
+import kotlin.math.exp
+import kotlin.math.sqrt
+import kotlin.random.Random
+
+class TransformerBlockTest {
+
+    val net = Network()
+
+    val block = TransformerBlock(5, 4, 6).apply {
+        randomize(NormalDistribution(0.0, .5))
+    }
+
+    val random = Random(7)
+
+    val tokens = List(8) { DoubleArray(4) { random.nextDouble() } }
+
+    /**
+     * Set the inputs to a window of [tokens] and update the block.
+     */
+    private fun updateWith(block: TransformerBlock, start: Int) {
+        for (t in 0 until block.sequenceSize) {
+            for (j in 0 until 4) {
+                block.inputs[t, j] = tokens[start + t][j]
+            }
+        }
+        with(net) { block.update() }
+    }
+
+    /**
+     * The block's output computed with whole-matrix operations.
+     */
+    private fun expectedActivations(block: TransformerBlock, inputs: Matrix): Matrix {
+        val q = inputs.mm(block.Q)
+        val k = inputs.mm(block.K)
+        val v = inputs.mm(block.V)
+        val scores = q.mm(k.transpose()).div(sqrt(4.0))
+        for (t in 0 until scores.nrow()) {
+            val last = if (block.causal) t else scores.ncol() - 1
+            val max = (0..last).maxOf { scores[t, it] }
+            val sum = (0..last).sumOf { exp(scores[t, it] - max) }
+            for (s in 0 until scores.ncol()) {
+                scores[t, s] = if (s <= last) exp(scores[t, s] - max) / sum else 0.0
+            }
+        }
+        val feedForwardInput = inputs.clone().add(scores.mm(v)).layerNorm()
+        val hidden = feedForwardInput.mm(block.W1).add(block.b1).relu()
+        return feedForwardInput.add(hidden.mm(block.W2).add(block.b2)).layerNorm()
+    }
+
+    private fun window(start: Int) = Matrix(5, 4).apply {
+        for (t in 0 until 5) {
+            for (j in 0 until 4) {
+                this[t, j] = tokens[start + t][j]
+            }
+        }
+    }
+
+    private fun assertMatrixEquals(expected: Matrix, actual: Matrix) {
+        for (i in 0 until expected.nrow()) {
+            for (j in 0 until expected.ncol()) {
+                assertEquals(expected[i, j], actual[i, j], 1e-9)
+            }
+        }
+    }
+
+    @Test
+    fun `update matches matrix computation`() {
+        updateWith(block, 0)
+        assertMatrixEquals(expectedActivations(block, window(0)), block.activations)
+    }
+
+    @Test
+    fun `causal attention ignores later positions`() {
+        block.causal = true
+        updateWith(block, 0)
+        assertEquals(1.0, block.selfAttention[0, 0], 1e-12)
+        (1 until 5).forEach { assertEquals(0.0, block.selfAttention[0, it]) }
+        assertMatrixEquals(expectedActivations(block, window(0)), block.activations)
+    }
+
+    @Test
+    fun `advancing the sequence reuses earlier rows and gives the same result`() {
+        block.causal = true
+        updateWith(block, 0)
+        updateWith(block, 1)
+        updateWith(block, 2)
+
+        val fresh = block.copy()
+        updateWith(fresh, 2)
+        assertMatrixEquals(fresh.kStack, block.kStack)
+        assertMatrixEquals(fresh.activations, block.activations)
+        assertMatrixEquals(expectedActivations(block, window(2)), block.activations)
+    }
+}
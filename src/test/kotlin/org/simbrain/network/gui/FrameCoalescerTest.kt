@@ -0,0 +1,42 @@
+package org.simbrain.network.gui
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+
+class FrameCoalescerTest {
+
+    @Test
+    fun `refreshes marked many times in a frame run once`() {
+        val coalescer = FrameCoalescer(framesPerSecond = 30)
+        var first = 0
+        var second = 0
+        val refreshFirst: () -> Unit = { first++ }
+        val refreshSecond: () -> Unit = { second++ }
+        repeat(100) {
+            coalescer.markDirty(refreshFirst)
+            coalescer.markDirty(refreshSecond)
+        }
+        assertEquals(2, coalescer.pendingCount)
+        coalescer.flush()
+        assertEquals(1, first)
+        assertEquals(1, second)
+        assertEquals(0, coalescer.pendingCount)
+        coalescer.flush()
+        assertEquals(1, first)
+    }
+
+    @Test
+    fun `a refresh marked while flushing runs in a later frame`() {
+        val coalescer = FrameCoalescer(framesPerSecond = 30)
+        var count = 0
+        lateinit var refresh: () -> Unit
+        refresh = {
+            count++
+            if (count == 1) coalescer.markDirty(refresh)
+        }
+        coalescer.markDirty(refresh)
+        coalescer.flush()
+        coalescer.flush()
+        assertEquals(2, count)
+    }
+}
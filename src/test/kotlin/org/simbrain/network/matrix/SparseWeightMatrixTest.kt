@@ -0,0 +1,103 @@
+package org.simbrain.network.matrix
+
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.simbrain.network.connections.Sparse
+import org.simbrain.network.core.*
+import org.simbrain.network.learningrules.HebbianRule
+import smile.math.blas.Transpose
+
+class SparseWeightMatrixTest {
+
+    lateinit var net: Network
+    lateinit var na1: NeuronArray
+    lateinit var na2: NeuronArray
+
+    @BeforeEach
+    fun setUp() {
+        net = Network()
+        na1 = NeuronArray(40)
+        na2 = NeuronArray(30)
+        net.addNetworkModels(na1, na2)
+    }
+
+    @Test
+    fun `get and set entries`() {
+        val swm = SparseWeightMatrix(na1, na2)
+        swm.setEntries(intArrayOf(2, 0, 2), intArrayOf(5, 3, 1), doubleArrayOf(1.0, 2.0, 3.0))
+        assertEquals(3, swm.nonZeroCount)
+        assertEquals(2.0, swm[0, 3])
+        assertEquals(3.0, swm[2, 1])
+        assertEquals(1.0, swm[2, 5])
+        assertEquals(0.0, swm[1, 1])
+        swm[1, 1] = 4.0
+        assertEquals(4, swm.nonZeroCount)
+        assertEquals(4.0, swm[1, 1])
+        assertEquals(1.0, swm[2, 5])
+    }
+
+    @Test
+    fun `sparse matrix vector product matches dense product`() {
+        val swm = Sparse(connectionDensity = .1, seed = 1).connectLayers(na1, na2)
+        net.addNetworkModel(swm)
+        swm.randomize()
+        na1.randomize()
+        with(net) { swm.updatePSR() }
+
+        val expected = DoubleArray(na2.size)
+        swm.toDenseMatrix().mv(Transpose.NO_TRANSPOSE, 1.0, na1.activationArray, 0.0, expected)
+        assertArrayEquals(expected, swm.getSummedPSRs(), 1e-12)
+        assertArrayEquals(expected, swm.psrMatrix.rowSums(), 1e-12)
+    }
+
+    @Test
+    fun `density determines number of entries`() {
+        val swm = Sparse(connectionDensity = .1, seed = 1).connectLayers(na1, na2)
+        assertEquals(120, swm.nonZeroCount)
+        val recurrent = Sparse(connectionDensity = .5, seed = 1).connectLayers(na1, na1)
+        assertEquals(780, recurrent.nonZeroCount)
+        recurrent.forEachEntry { i, j, _ -> assertNotEquals(i, j) }
+    }
+
+    @Test
+    fun `equalized efferents give each source the same number of targets`() {
+        val recurrent = Sparse(connectionDensity = .25, equalizeEfferents = true, seed = 1).connectLayers(na1, na1)
+        val counts = IntArray(na1.size)
+        recurrent.forEachEntry { i, j, _ ->
+            assertNotEquals(i, j)
+            counts[j]++
+        }
+        counts.forEach { assertEquals(10, it) }
+    }
+
+    @Test
+    fun `excitatory and inhibitory inputs sum to weighted inputs`() {
+        val swm = Sparse(connectionDensity = .2, seed = 2).connectLayers(na1, na2)
+        net.addNetworkModel(swm)
+        swm.randomize()
+        na1.randomize()
+        with(net) { swm.updatePSR() }
+        val excitatory = na2.excitatoryInputs
+        val inhibitory = na2.inhibitoryInputs
+        val summed = swm.getSummedPSRs()
+        for (i in summed.indices) {
+            assertEquals(summed[i], excitatory[i] + inhibitory[i], 1e-12)
+        }
+    }
+
+    @Test
+    fun `hebbian rule only updates stored entries`() {
+        val swm = SparseWeightMatrix(na1, na2)
+        swm.setEntries(intArrayOf(0, 1), intArrayOf(0, 1), doubleArrayOf(0.0, 0.0))
+        swm.learningRule = HebbianRule().apply { learningRate = 1.0 }
+        net.addNetworkModel(swm)
+        na1.setActivations(DoubleArray(na1.size) { 1.0 })
+        na2.setActivations(DoubleArray(na2.size) { 2.0 })
+        with(net) { swm.update() }
+        assertEquals(2.0, swm[0, 0])
+        assertEquals(2.0, swm[1, 1])
+        assertEquals(0.0, swm[0, 1])
+        assertEquals(2, swm.nonZeroCount)
+    }
+}
@@ -2,6 +2,7 @@ package org.simbrain.network.trainers
 
 import kotlinx.coroutines.runBlocking
 import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTrue
 import org.junit.jupiter.api.Test
 import org.simbrain.network.core.*
 import org.simbrain.network.subnetworks.BackpropNetwork
@@ -10,6 +11,7 @@ import org.simbrain.network.updaterules.SigmoidalRule
 import org.simbrain.network.updaterules.SoftmaxRule
 import org.simbrain.network.updaterules.interfaces.BoundedUpdateRule
 import org.simbrain.util.crossEntropy
+import org.simbrain.util.rowVectorTransposed
 import org.simbrain.util.math.SigmoidFunctionEnum
 import org.simbrain.util.sse
 import org.simbrain.util.stats.ProbabilityDistribution
@@ -211,6 +213,120 @@ class BackpropTests {
         assertEquals(0.0, bp.trainer.lastError, .1)
     }
 
+    @Test
+    fun `trainer metrics count rows and time`() {
+        val bp = BackpropNetwork(intArrayOf(10, 7, 10), null).apply {
+            trainingSet = MatrixDataset(inputs = Matrix.eye(10), targets = Matrix.eye(10))
+            trainer.updateType = SupervisedTrainer.UpdateMethod.Batch(4)
+        }
+        net.addNetworkModels(bp)
+        with(net) {
+            with(bp) {
+                runBlocking {
+                    repeat(5) { bp.trainer.trainOnce() }
+                }
+            }
+        }
+        with(bp.trainer.metrics) {
+            assertEquals(5L, iterations)
+            assertEquals(20L, rows)
+            assertTrue(rowsPerSecond > 0)
+            assertTrue(forwardNanos > 0)
+            assertTrue(backwardNanos > 0)
+            reset()
+            assertEquals(0L, rows)
+        }
+    }
+
+    @Test
+    fun `batched training matches row by row accumulation`() {
+        with(net) {
+            na2.updateRule = SigmoidalRule().apply {
+                type = SigmoidFunctionEnum.LOGISTIC
+            }
+            wm1.randomize(NormalDistribution(0.0, .1))
+            wm2.randomize(NormalDistribution(0.0, .1))
+            na2.randomizeBiases(NormalDistribution(0.0, .01))
+            na3.randomizeBiases(NormalDistribution(0.0, .01))
+            val dataset = MatrixDataset(
+                inputs = Matrix(20, na1.size).apply { forEachIndexed(this) { i, j -> this[i, j] = Random.nextDouble() } },
+                targets = Matrix(20, na3.size).apply { forEachIndexed(this) { i, j -> this[i, j] = ((i + j) % 2).toDouble() } }
+            )
+            val wmList = listOf(wm1, wm2)
+            val parameters = listOf(wm1.weightMatrix, wm2.weightMatrix, na2.biases, na3.biases)
+            val initial = parameters.map { it.clone() }
+
+            val weightAccumulator = HashMap<WeightMatrix, Matrix>()
+            val biasesAccumulator = HashMap<NeuronArray, Matrix>()
+            var expectedError = 0.0
+            for (row in 5 until 17) {
+                wmList.forwardPass(dataset.inputs.rowVectorTransposed(row))
+                expectedError += wmList.accumulateBackprop(dataset.targets.rowVectorTransposed(row), weightAccumulator, biasesAccumulator)
+            }
+            weightAccumulator.forEach { (wm, delta) -> wm.weightMatrix.add(delta.mul(.1)) }
+            biasesAccumulator.forEach { (na, delta) -> na.biases.add(delta.mul(.1)) }
+            val expected = parameters.map { it.clone() }
+            val expectedOutput = na3.activations.clone()
+
+            parameters.zip(initial).forEach { (parameter, value) ->
+                forEachIndexed(parameter) { i, j -> parameter[i, j] = value[i, j] }
+            }
+            assertTrue(BatchedBackprop.canTrain(wmList))
+            val error = runBlocking { BatchedBackprop(wmList).trainBatch(dataset, 5 until 17, .1, BackpropLossFunction.SSE) }
+
+            assertEquals(expectedError / 12, error, 1e-9)
+            parameters.zip(expected).forEach { (actual, value) ->
+                forEachIndexed(actual) { i, j -> assertEquals(value[i, j], actual[i, j], 1e-9) }
+            }
+            forEachIndexed(expectedOutput) { i, j -> assertEquals(expectedOutput[i, j], na3.activations[i, j], 1e-9) }
+        }
+    }
+
+    @Test
+    fun `sharded training matches unsharded training and is reproducible`() {
+        with(net) {
+            wm1.randomize(NormalDistribution(0.0, .1))
+            wm2.randomize(NormalDistribution(0.0, .1))
+            val random = Random(42)
+            val dataset = MatrixDataset(
+                inputs = Matrix(23, na1.size).apply { forEachIndexed(this) { i, j -> this[i, j] = random.nextDouble() } },
+                targets = Matrix(23, na3.size).apply { forEachIndexed(this) { i, j -> this[i, j] = ((i + j) % 2).toDouble() } }
+            )
+            val wmList = listOf(wm1, wm2)
+            val parameters = listOf(wm1.weightMatrix, wm2.weightMatrix, na2.biases, na3.biases)
+            val initial = parameters.map { it.clone() }
+
+            fun train(shards: Int): List<Matrix> {
+                parameters.zip(initial).forEach { (parameter, value) ->
+                    forEachIndexed(parameter) { i, j -> parameter[i, j] = value[i, j] }
+                }
+                val engine = BatchedBackprop(wmList, shards)
+                runBlocking {
+                    repeat(5) { engine.trainBatch(dataset, 0 until 23, .01, BackpropLossFunction.SSE) }
+                }
+                return parameters.map { it.clone() }
+            }
+
+            val unsharded = train(1)
+            val sharded = train(4)
+            val repeated = train(4)
+            parameters.indices.forEach { index ->
+                forEachIndexed(unsharded[index]) { i, j ->
+                    assertEquals(unsharded[index][i, j], sharded[index][i, j], 1e-9)
+                    assertEquals(sharded[index][i, j], repeated[index][i, j], 0.0)
+                }
+            }
+        }
+    }
+
+    private fun forEachIndexed(matrix: Matrix, action: (Int, Int) -> Unit) {
+        for (i in 0 until matrix.nrow()) {
+            for (j in 0 until matrix.ncol()) {
+                action(i, j)
+            }
+        }
+    }
+
     fun makeMockInputs(size: Int): Matrix {
         val inputs = Matrix(size, 1)
         for (i in 0 until size) {
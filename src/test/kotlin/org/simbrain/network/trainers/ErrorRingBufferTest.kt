@@ -0,0 +1,55 @@
+package org.simbrain.network.trainers
+
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import org.simbrain.network.core.Network
+import org.simbrain.network.subnetworks.BackpropNetwork
+import smile.math.matrix.Matrix
+
+class ErrorRingBufferTest {
+
+    @Test
+    fun `drain summarizes errors since the last drain`() {
+        val buffer = ErrorRingBuffer(16)
+        (1..4).forEach { buffer.add(it, it.toDouble()) }
+        val report = buffer.drain()!!
+        assertEquals(ErrorReport(1, 4, 4, 1.0, 2.5, 4.0, 4.0), report)
+        assertNull(buffer.drain())
+        buffer.add(5, 10.0)
+        assertEquals(ErrorReport.of(5, 10.0), buffer.drain())
+    }
+
+    @Test
+    fun `full buffer keeps the most recent errors`() {
+        val buffer = ErrorRingBuffer(4)
+        (1..10).forEach { buffer.add(it, it.toDouble()) }
+        val report = buffer.drain()!!
+        assertEquals(7, report.firstIteration)
+        assertEquals(10, report.lastIteration)
+        assertEquals(4, report.count)
+        assertEquals(8.5, report.mean)
+    }
+
+    @Test
+    fun `buffered reporting reports the last iteration after training`() {
+        val net = Network()
+        val bp = BackpropNetwork(intArrayOf(5, 3, 5), null).apply {
+            trainingSet = MatrixDataset(inputs = Matrix.eye(5), targets = Matrix.eye(5))
+        }
+        net.addNetworkModels(bp)
+        val reports = mutableListOf<ErrorReport>()
+        with(bp.trainer) {
+            errorReporting.mode = SupervisedTrainer.ErrorReporting.Mode.Aggregated
+            events.errorReported.on { reports.add(it) }
+            runBlocking {
+                with(net) { bp.train(200) }
+            }
+        }
+        assertTrue(reports.isNotEmpty())
+        assertEquals(200, reports.last().lastIteration)
+        assertEquals(200, reports.sumOf { it.count })
+    }
+}
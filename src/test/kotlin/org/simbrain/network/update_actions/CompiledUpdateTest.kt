@@ -0,0 +1,138 @@
+package org.simbrain.network.update_actions
+
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Assertions.assertArrayEquals
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import org.simbrain.network.core.Network
+import org.simbrain.network.core.Neuron
+import org.simbrain.network.core.Synapse
+import org.simbrain.network.learningrules.HebbianRule
+import kotlin.math.sin
+
+class CompiledUpdateTest {
+
+    private val numNeurons = 100
+
+    /**
+     * Free neurons with a fixed, irregular connectivity. Every third source neuron has Hebbian outgoing synapses,
+     * which cannot be compiled.
+     */
+    private fun createNetwork(): Pair<Network, List<Neuron>> {
+        val net = Network()
+        val neurons = List(numNeurons) { i ->
+            Neuron().apply {
+                activation = sin(i.toDouble())
+                bias = 0.01 * i
+            }
+        }
+        net.addNetworkModels(neurons)
+        val synapses = (0 until numNeurons).flatMap { i ->
+            listOf(3, 17, 41).map { offset ->
+                Synapse(neurons[i], neurons[(i * 7 + offset) % numNeurons], 0.1 * sin(i + offset.toDouble())).apply {
+                    if (i % 3 == 0) {
+                        learningRule = HebbianRule().apply { learningRate = 0.001 }
+                    }
+                }
+            }
+        }
+        net.addNetworkModels(synapses)
+        return net to neurons
+    }
+
+    private fun Network.useCompiledUpdate() {
+        updateManager.clear()
+        updateManager.addAction(CompiledUpdate(this))
+    }
+
+    @Test
+    fun `compiled update matches buffered update`() {
+        val (bufferedNet, bufferedNeurons) = createNetwork()
+        val (compiledNet, compiledNeurons) = createNetwork()
+        compiledNet.useCompiledUpdate()
+
+        repeat(20) {
+            bufferedNet.update()
+            compiledNet.update()
+        }
+
+        assertArrayEquals(
+            bufferedNeurons.map { it.activation }.toDoubleArray(),
+            compiledNeurons.map { it.activation }.toDoubleArray(),
+            1e-12
+        )
+        assertArrayEquals(
+            bufferedNet.freeSynapses.map { it.strength }.toDoubleArray(),
+            compiledNet.freeSynapses.map { it.strength }.toDoubleArray(),
+            1e-12
+        )
+    }
+
+    @Test
+    fun `only static synapses are compiled`() {
+        val (net, _) = createNetwork()
+        net.useCompiledUpdate()
+        net.update()
+        assertEquals(numNeurons * 3 - 34 * 3, net.compiledNetwork!!.compiledSynapseCount)
+    }
+
+    @Test
+    fun `psrs are written back on sync`() {
+        val net = Network()
+        val n1 = Neuron().apply { clamped = true; activation = 2.0 }
+        val n2 = Neuron()
+        val s12 = Synapse(n1, n2, 0.5)
+        net.addNetworkModels(n1, n2, s12)
+        net.useCompiledUpdate()
+        net.update()
+        assertEquals(1.0, n2.activation)
+        net.compiledNetwork!!.syncToModels()
+        assertEquals(1.0, s12.psr)
+    }
+
+    @Test
+    fun `models added or removed are used by the next update`() {
+        val net = Network()
+        val n1 = Neuron().apply { clamped = true; activation = 2.0 }
+        val n2 = Neuron()
+        val s12 = Synapse(n1, n2, 0.5)
+        net.addNetworkModels(n1, n2, s12)
+        net.useCompiledUpdate()
+        net.update()
+        assertEquals(1.0, n2.activation)
+
+        val n3 = Neuron()
+        val s13 = Synapse(n1, n3, 0.25)
+        net.addNetworkModels(n3, s13)
+        net.update()
+        assertEquals(0.5, n3.activation)
+
+        runBlocking { s12.delete() }
+        net.update()
+        assertEquals(0.0, n2.activation)
+        assertEquals(1, net.compiledNetwork!!.compiledSynapseCount)
+    }
+
+    @Test
+    fun `psrs and weighted inputs are current when read after an update`() {
+        val net = Network()
+        val n1 = Neuron().apply { clamped = true; activation = 2.0 }
+        val n2 = Neuron().apply { clamped = true; activation = 1.0 }
+        val n3 = Neuron()
+        val s13 = Synapse(n1, n3, 0.5)
+        val s23 = Synapse(n2, n3, -3.0)
+        net.addNetworkModels(n1, n2, n3, s13, s23)
+        net.useCompiledUpdate()
+        net.update()
+        assertEquals(1.0, s13.psr)
+        assertEquals(-3.0, s23.psr)
+        assertEquals(-2.0, n3.weightedInputs)
+        assertEquals(1.0, n3.excitatoryInputs)
+        assertEquals(-3.0, n3.inhibitoryInputs)
+
+        n1.activation = 4.0
+        net.update()
+        assertEquals(2.0, s13.psr)
+        assertEquals(-1.0, n3.weightedInputs)
+    }
+}
@@ -0,0 +1,55 @@
+package org.simbrain.network.update_actions
+
+import org.junit.jupiter.api.Assertions.assertArrayEquals
+import org.junit.jupiter.api.Test
+import org.simbrain.network.core.Network
+import org.simbrain.network.core.Neuron
+import org.simbrain.network.core.Synapse
+import org.simbrain.network.learningrules.HebbianRule
+import kotlin.math.sin
+
+class ParallelBufferedUpdateTest {
+
+    private val numNeurons = 200
+
+    /**
+     * Network of free neurons with a fixed, irregular connectivity so serial and parallel updates can be compared.
+     */
+    private fun createNetwork(): Pair<Network, List<Neuron>> {
+        val net = Network()
+        val neurons = List(numNeurons) { i -> Neuron().apply { activation = sin(i.toDouble()) } }
+        net.addNetworkModels(neurons)
+        val synapses = (0 until numNeurons).flatMap { i ->
+            listOf(3, 17, 41).map { offset ->
+                Synapse(neurons[i], neurons[(i * 7 + offset) % numNeurons], 0.1 * sin(i + offset.toDouble())).apply {
+                    learningRule = HebbianRule().apply { learningRate = 0.001 }
+                }
+            }
+        }
+        net.addNetworkModels(synapses)
+        return net to neurons
+    }
+
+    @Test
+    fun `parallel update matches serial update`() {
+        val (serialNet, serialNeurons) = createNetwork()
+        val (parallelNet, parallelNeurons) = createNetwork()
+        parallelNet.updateManager.clear()
+        parallelNet.updateManager.addAction(ParallelBufferedUpdate(parallelNet))
+        parallelNet.parallelUpdateChunkSize = 16
+
+        repeat(20) {
+            serialNet.update()
+            parallelNet.update()
+        }
+
+        assertArrayEquals(
+            serialNeurons.map { it.activation }.toDoubleArray(),
+            parallelNeurons.map { it.activation }.toDoubleArray()
+        )
+        assertArrayEquals(
+            serialNet.freeSynapses.map { it.strength }.toDoubleArray(),
+            parallelNet.freeSynapses.map { it.strength }.toDoubleArray()
+        )
+    }
+}
@@ -0,0 +1,64 @@
+package org.simbrain.network.updaterules
+
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Assumptions.assumeTrue
+import org.junit.jupiter.api.Test
+import org.simbrain.network.core.Network
+import org.simbrain.network.core.NeuronArray
+import org.simbrain.network.util.MatrixDataHolder
+import org.simbrain.network.util.ScalarDataHolder
+import org.simbrain.util.setColConstant
+import java.lang.management.ManagementFactory
+
+/**
+ * Checks that array update rules that update layers in place do not allocate per element.
+ */
+class ArrayRuleAllocationTest {
+
+    private val size = 10_000
+
+    private val threadBean = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+
+    /**
+     * Bytes allocated by the current thread per call of [action], after warming up.
+     */
+    private fun bytesPerCall(action: () -> Unit): Long {
+        val bean = threadBean!!
+        repeat(2000) { action() }
+        val id = Thread.currentThread().id
+        val start = bean.getThreadAllocatedBytes(id)
+        val calls = 200
+        repeat(calls) { action() }
+        return (bean.getThreadAllocatedBytes(id) - start) / calls
+    }
+
+    private fun checkRule(rule: NeuronUpdateRule<ScalarDataHolder, MatrixDataHolder>) {
+        assumeTrue(threadBean?.isThreadAllocatedMemorySupported == true)
+        val net = Network()
+        val array = NeuronArray(size)
+        net.addNetworkModel(array)
+        array.updateRule = rule
+        array.fillActivations(0.0)
+        val bytes = bytesPerCall {
+            array.inputs.setColConstant(0, 10.0)
+            with(net) { array.updateRule.apply(array, array.dataHolder) }
+        }
+        // Allocating even one small object per element would take several bytes per element
+        assertTrue(bytes < size / 10, "${rule.name} allocated $bytes bytes per update of $size neurons")
+    }
+
+    @Test
+    fun `izhikevich array update does not allocate`() = checkRule(IzhikevichRule())
+
+    @Test
+    fun `integrate and fire array update does not allocate`() = checkRule(IntegrateAndFireRule())
+
+    @Test
+    fun `fitzhugh nagumo array update does not allocate`() = checkRule(FitzhughNagumo())
+
+    @Test
+    fun `sigmoidal array update does not allocate`() = checkRule(SigmoidalRule())
+
+    @Test
+    fun `linear array update does not allocate`() = checkRule(LinearRule())
+}
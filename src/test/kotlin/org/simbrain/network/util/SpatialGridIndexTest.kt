@@ -0,0 +1,51 @@
+package org.simbrain.network.util
+
+import org.junit.jupiter.api.Assertions.assertArrayEquals
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import org.simbrain.network.connections.createProbabilisticallySynapses
+import org.simbrain.network.core.Neuron
+import kotlin.random.Random
+
+class SpatialGridIndexTest {
+
+    private val random = Random(1)
+
+    private val neurons = List(500) {
+        Neuron().apply {
+            x = random.nextDouble(-500.0, 500.0)
+            y = random.nextDouble(-500.0, 500.0)
+        }
+    }
+
+    private fun bruteForceNeighbors(x: Double, y: Double, radius: Double) = neurons.indices.filter {
+        val dx = neurons[it].x - x
+        val dy = neurons[it].y - y
+        dx * dx + dy * dy < radius * radius
+    }.toIntArray()
+
+    @Test
+    fun `neighbors match a brute force search`() {
+        val index = SpatialGridIndex(neurons, 60.0)
+        for (radius in listOf(10.0, 60.0, 150.0, 5000.0)) {
+            repeat(20) {
+                val x = random.nextDouble(-600.0, 600.0)
+                val y = random.nextDouble(-600.0, 600.0)
+                assertArrayEquals(bruteForceNeighbors(x, y, radius), index.neighbors(x, y, radius))
+            }
+        }
+    }
+
+    @Test
+    fun `points far from the index have no neighbors`() {
+        val index = SpatialGridIndex(neurons, 60.0)
+        assertEquals(0, index.neighbors(10_000.0, 10_000.0, 100.0).size)
+    }
+
+    @Test
+    fun `radial probabilistic connections only join nearby neurons`() {
+        val synapses = createProbabilisticallySynapses(neurons, neurons, 1.0, 50.0)
+        val expected = neurons.sumOf { n -> bruteForceNeighbors(n.x, n.y, 50.0).size - 1 }
+        assertEquals(expected, synapses.size)
+    }
+}
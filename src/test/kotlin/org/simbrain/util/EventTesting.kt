@@ -2,6 +2,8 @@ package org.simbrain.util
 
 import kotlinx.coroutines.*
 import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertSame
+import org.junit.jupiter.api.Assertions.assertTrue
 import org.junit.jupiter.api.Test
 import kotlin.math.abs
 import kotlin.system.measureTimeMillis
@@ -18,6 +20,8 @@ class TestEvents : Events() {
     val longFireAndForgetEvent = NoArgEvent()
     val changedEvent = ChangedEvent<String>()
     val batchedAddedEvent = BatchOneArgEvent<String>(interval = 100)
+    val unhandledEvent = NoArgEvent()
+    val inlineEvent = OneArgEvent<String>()
 }
 
 class EventTesting {
@@ -209,4 +213,39 @@ class EventTesting {
             }
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    fun `events without handlers are elided`() {
+        val before = testEvents.elidedFireCount
+        repeat(10) {
+            testEvents.unhandledEvent.fire()
+        }
+        assertTrue(testEvents.unhandledEvent.fireAndBlock())
+        assertEquals(before + 11, testEvents.elidedFireCount)
+    }
+
+    @Test
+    fun `unconfined handlers run on the firing thread before fire returns`() {
+        val thread = Thread.currentThread()
+        var handledOn: Thread? = null
+        var value = ""
+        testEvents.inlineEvent.on(Dispatchers.Unconfined) {
+            handledOn = Thread.currentThread()
+            value = it
+        }
+        val before = testEvents.elidedFireCount
+        testEvents.inlineEvent.fire("test")
+        assertEquals("test", value)
+        assertSame(thread, handledOn)
+        assertEquals(before + 1, testEvents.elidedFireCount)
+    }
+
+    @Test
+    fun `a dispatched handler disables the inline path`() {
+        testEvents.inlineEvent.on(Dispatchers.Unconfined) { }
+        testEvents.inlineEvent.on(Dispatchers.Default, wait = true) { }
+        val before = testEvents.elidedFireCount
+        testEvents.inlineEvent.fireAndBlock("test")
+        assertEquals(before, testEvents.elidedFireCount)
+    }
+}
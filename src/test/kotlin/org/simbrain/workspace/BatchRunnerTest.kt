@@ -0,0 +1,56 @@
+package org.simbrain.workspace
+
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import org.simbrain.network.NetworkComponent
+import org.simbrain.network.core.Network
+import org.simbrain.network.core.Neuron
+import org.simbrain.network.core.NeuronArray
+import java.io.StringWriter
+
+class BatchRunnerTest {
+
+    private val workspace = Workspace()
+
+    private val network = Network().also { workspace.addWorkspaceComponent(NetworkComponent("net1", it)) }
+
+    private val runner = BatchRunner(workspace)
+
+    @Test
+    fun `run updates components and couplings`() {
+        val source = Neuron().apply { clamped = true; activation = .5 }
+        val target = Neuron()
+        network.addNetworkModels(source, target)
+        with(workspace.couplingManager) {
+            source.getProducer("getActivation") couple target.getConsumer("addInputValue")
+        }
+        runBlocking { runner.run(3) }
+        assertEquals(.5, target.activation, 0.0)
+        assertEquals(3, workspace.time)
+    }
+
+    @Test
+    fun `recorded values are written as csv`() {
+        val neuron = Neuron().apply { clamped = true; activation = .25 }
+        val array = NeuronArray(2).apply { isClamped = true; setActivations(doubleArrayOf(1.0, 2.0)) }
+        network.addNetworkModels(neuron, array)
+        with(workspace.couplingManager) {
+            runner.record(neuron.getProducer("getActivation"))
+            runner.record(array.getProducer("getActivationArray"))
+        }
+        val output = StringWriter()
+        runBlocking { runner.run(4, output, recordEvery = 2) }
+        val lines = output.toString().lines().filter { it.isNotEmpty() }
+        assertEquals(3, lines.size)
+        assertEquals(4, lines[0].split(",").size)
+        assertEquals("2,0.25,1.0,2.0", lines[1])
+        assertEquals("4,0.25,1.0,2.0", lines[2])
+    }
+
+    @Test
+    fun `unknown producer names are rejected`() {
+        assertThrows<IllegalArgumentException> { runner.record("No such producer") }
+    }
+}
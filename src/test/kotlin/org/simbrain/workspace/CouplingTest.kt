@@ -1,14 +1,19 @@
 package org.simbrain.workspace
 
 
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.runBlocking
 import org.junit.jupiter.api.Assertions.assertEquals
 import org.junit.jupiter.api.Assertions.assertTrue
 import org.junit.jupiter.api.Test
 import org.simbrain.network.NetworkComponent
 import org.simbrain.network.core.Network
+import org.simbrain.network.core.NeuronArray
 import org.simbrain.network.core.Neuron
 import org.simbrain.util.complement
+import org.simbrain.util.toDoubleArray
 import org.simbrain.workspace.couplings.Coupling
+import org.simbrain.workspace.couplings.CouplingUpdatePlan
 
 class CouplingTest {
 
@@ -241,4 +246,97 @@ class CouplingTest {
         assertEquals(.5, neuron2.activation, 0.0)
         assertEquals(.5, neuron3.activation, 0.0)
     }
+
+    @Test
+    fun `compiled double coupling passes values on each update`() {
+        val neuron1 = Neuron()
+        val neuron2 = Neuron()
+        val coupling = with(couplingManager) {
+            Coupling.create(neuron1.getProducer("getActivation"), neuron2.getConsumer("addInputValue"))
+        }
+        neuron1.activation = .25
+        coupling.update()
+        neuron1.activation = .5
+        coupling.update()
+        assertEquals(.75, neuron2.input, 0.0)
+    }
+
+    @Test
+    fun `compiled double array coupling passes values`() {
+        val source = NeuronArray(3)
+        val target = NeuronArray(3)
+        network.addNetworkModels(source, target)
+        source.setActivations(doubleArrayOf(1.0, 2.0, 3.0))
+        val coupling = with(couplingManager) {
+            Coupling.create(source.getProducer("getActivationArray"), target.getConsumer("setActivations"))
+        }
+        coupling.update()
+        assertEquals(listOf(1.0, 2.0, 3.0), target.activationArray.toList())
+    }
+
+    @Test
+    fun `update plan groups couplings that share a consumer or read a written container`() {
+        val neurons = List(6) { Neuron() }
+        val (a, b, c, d, e) = neurons
+        val f = neurons[5]
+        with(couplingManager) {
+            fun coupling(source: Neuron, target: Neuron) =
+                Coupling.create(source.getProducer("getActivation"), target.getConsumer("addInputValue"))
+
+            val aToB = coupling(a, b)
+            val cToB = coupling(c, b)
+            val bToD = coupling(b, d)
+            val aToE = coupling(a, e)
+            val aToF = coupling(a, f)
+            val plan = CouplingUpdatePlan(listOf(aToB, aToE, cToB, bToD, aToF), minTaskSize = 1)
+            assertEquals(listOf(listOf(aToB, cToB, bToD), listOf(aToE), listOf(aToF)), plan.groups)
+            assertEquals(3, plan.tasks.size)
+        }
+    }
+
+    @Test
+    fun `parallel plan gives the same result as updating in order`() {
+        val sources = List(50) { Neuron().apply { activation = it.toDouble() } }
+        val targets = List(50) { Neuron() }
+        val couplings = with(couplingManager) {
+            sources.flatMap { source ->
+                targets.map { target ->
+                    Coupling.create(source.getProducer("getActivation"), target.getConsumer("addInputValue"))
+                }
+            }
+        }
+        runBlocking { CouplingUpdatePlan(couplings, minTaskSize = 10).run(Dispatchers.Default) }
+        targets.forEach { assertEquals((0 until 50).sum().toDouble(), it.input, 0.0) }
+    }
+
+    @Test
+    fun `vector coupling passes the producer matrix without sharing it`() {
+        val source = NeuronArray(3)
+        val target = NeuronArray(3)
+        network.addNetworkModels(source, target)
+        val coupling = with(couplingManager) {
+            Coupling.create(source.getProducer("getActivationArray"), target.getConsumer("setActivations"))
+        }
+        assertTrue(coupling.producer.vectorMethod != null && coupling.consumer.vectorMethod != null)
+        source.setActivations(doubleArrayOf(1.0, 2.0, 3.0))
+        coupling.update()
+        assertTrue(source.activations !== target.activations)
+        source.setActivations(doubleArrayOf(4.0, 5.0, 6.0))
+        assertEquals(listOf(1.0, 2.0, 3.0), target.activationArray.toList())
+    }
+
+    @Test
+    fun `vector coupling adds inputs`() {
+        val source = NeuronArray(2)
+        val target = NeuronArray(2)
+        network.addNetworkModels(source, target)
+        source.setActivations(doubleArrayOf(1.0, -1.0))
+        val coupling = with(couplingManager) {
+            val consumer = target.consumers.first { it.method.name == "addInputs" && it.type == DoubleArray::class.java }
+            Coupling.create(source.getProducer("getOutputArray"), consumer)
+        }
+        coupling.update()
+        coupling.update()
+        assertEquals(listOf(2.0, -2.0), target.inputs.toDoubleArray().toList())
+    }
 }
@@ -0,0 +1,54 @@
+package org.simbrain.workspace
+
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import org.simbrain.network.NetworkComponent
+import org.simbrain.network.core.Network
+import org.simbrain.network.core.Neuron
+import org.simbrain.network.core.Synapse
+import org.simbrain.network.updaterules.LinearRule
+
+class ParameterSweepTest {
+
+    private val workspace = Workspace()
+
+    private val network = Network().also { workspace.addWorkspaceComponent(NetworkComponent("net", it)) }
+
+    private val source = Neuron().apply { clamped = true; activation = 1.0 }
+
+    private val target = Neuron()
+
+    init {
+        network.addNetworkModels(source, target, Synapse(source, target, 1.0))
+    }
+
+    @Test
+    fun `each variant gets its own parameters`() {
+        val slopes = listOf(.1, .2, .3, .4, .5, .6)
+        val results = runBlocking {
+            ParameterSweep.of(workspace, threads = 3).run(
+                variants = slopes.map { mapOf("net/${target.id}.updateRule.slope" to it) },
+                iterations = 2,
+                outputs = listOf("${target.id}:getActivation")
+            )
+        }
+        assertEquals(slopes.size, results.rowCount)
+        assertEquals(2, results.columnCount)
+        slopes.forEachIndexed { i, slope ->
+            assertEquals(slope, results.getValueAt(i, 0))
+            assertEquals(slope, results.getValueAt(i, 1) as Double, 1e-9)
+        }
+        // The original workspace is not changed
+        assertEquals(1.0, (target.updateRule as LinearRule).slope)
+    }
+
+    @Test
+    fun `set parameter converts values and rejects unknown properties`() {
+        workspace.setParameter("net/${target.id}.updateRule.slope", "2")
+        assertEquals(2.0, (target.updateRule as LinearRule).slope)
+        assertThrows<IllegalArgumentException> { workspace.setParameter("net/${target.id}.noSuchProperty", 1) }
+        assertThrows<IllegalArgumentException> { workspace.setParameter("net/NoSuchNeuron.bias", 1) }
+    }
+}
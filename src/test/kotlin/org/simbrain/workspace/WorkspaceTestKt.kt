@@ -2,7 +2,20 @@ package org.simbrain.workspace
 
 import kotlinx.coroutines.runBlocking
 import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTrue
 import org.junit.jupiter.api.Test
+import org.simbrain.network.NetworkComponent
+import org.simbrain.network.core.Network
+import org.simbrain.network.core.Neuron
+import org.simbrain.network.core.NeuronArray
+import org.simbrain.network.core.Synapse
+import org.simbrain.network.core.WeightMatrix
+import org.simbrain.workspace.serialization.WorkspaceSerializer
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.util.zip.ZipEntry
+import java.util.zip.ZipInputStream
+import java.util.zip.ZipOutputStream
 
 /**
  * Also see [WorkspaceTest] for java based test
@@ -36,4 +49,88 @@ class WorkspaceTestKt {
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * Three networks coupled in a chain with a loop back to the first, run for some iterations. Returns the final
+     * activations and the workspace time.
+     */
+    private fun runCoupledNetworks(pipelined: Boolean): Pair<List<Double>, Int> {
+        val workspace = Workspace()
+        workspace.updater.isPipelined = pipelined
+        val (net1, net2, net3) = List(3) { i ->
+            Network().also { workspace.addWorkspaceComponent(NetworkComponent("net${i + 1}", it)) }
+        }
+        val a = Neuron().apply { bias = .1 }
+        val d = Neuron()
+        net1.addNetworkModels(a, d, Synapse(a, a, .5))
+        val b = Neuron()
+        net2.addNetworkModel(b)
+        val c = Neuron()
+        net3.addNetworkModel(c)
+        with(workspace.couplingManager) {
+            a.getProducer("getActivation") couple b.getConsumer("addInputValue")
+            b.getProducer("getActivation") couple c.getConsumer("addInputValue")
+            b.getProducer("getActivation") couple d.getConsumer("addInputValue")
+        }
+        workspace.simpleIterate(25)
+        return listOf(a, b, c, d).map { it.activation } to workspace.time
+    }
+
+    @Test
+    fun `pipelined update gives the same results as strict update`() {
+        val (strict, strictTime) = runCoupledNetworks(pipelined = false)
+        val (pipelined, pipelinedTime) = runCoupledNetworks(pipelined = true)
+        assertTrue(strict.all { it != 0.0 })
+        assertEquals(strict, pipelined)
+        assertEquals(strictTime, pipelinedTime)
+    }
+
+    @Test
+    fun `large matrices are saved as binary entries and restored`() {
+        val network = Network()
+        workspace.addWorkspaceComponent(NetworkComponent("net", network))
+        val source = NeuronArray(50)
+        val target = NeuronArray(50)
+        val weights = WeightMatrix(source, target)
+        network.addNetworkModels(source, target, weights)
+        weights.setWeights(DoubleArray(2500) { it / 2500.0 })
+
+        val archive = ByteArrayOutputStream().also { WorkspaceSerializer(workspace).serialize(it, true) }.toByteArray()
+        val names = ZipInputStream(ByteArrayInputStream(archive)).use { zip ->
+            generateSequence { zip.nextEntry?.name }.toList()
+        }
+        assertEquals("contents.xml", names.first())
+        assertTrue(names.any { it.startsWith("data/") && it.endsWith(".bin") })
+
+        val restored = Workspace()
+        WorkspaceSerializer(restored).deserialize(ByteArrayInputStream(archive))
+        val restoredWeights = (restored.getComponent("net") as NetworkComponent).network
+            .getModels(WeightMatrix::class.java).single()
+        assertTrue(weights.weights.contentEquals(restoredWeights.weights))
+    }
+
+    @Test
+    fun `archives with contents last can still be opened`() {
+        val network = Network()
+        workspace.addWorkspaceComponent(NetworkComponent("net", network))
+        network.addNetworkModels(Neuron().apply { label = "old" })
+        val archive = ByteArrayOutputStream().also { WorkspaceSerializer(workspace).serialize(it, true) }.toByteArray()
+
+        // Rewrite the archive in the old order, with contents.xml at the end
+        val entries = ZipInputStream(ByteArrayInputStream(archive)).use { zip ->
+            generateSequence { zip.nextEntry?.let { it.name to zip.readAllBytes() } }.toList()
+        }
+        val oldArchive = ByteArrayOutputStream().also { bytes ->
+            ZipOutputStream(bytes).use { zip ->
+                entries.sortedBy { (name, _) -> name == "contents.xml" }.forEach { (name, data) ->
+                    zip.putNextEntry(ZipEntry(name))
+                    zip.write(data)
+                }
+            }
+        }.toByteArray()
+
+        val restored = Workspace()
+        WorkspaceSerializer(restored).deserialize(ByteArrayInputStream(oldArchive))
+        val neuron = (restored.getComponent("net") as NetworkComponent).network.getModels(Neuron::class.java).single()
+        assertEquals("old", neuron.label)
+    }
+}